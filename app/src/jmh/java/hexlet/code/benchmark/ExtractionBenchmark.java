@@ -0,0 +1,75 @@
+package hexlet.code.benchmark;
+
+import hexlet.code.service.HtmlExtractor;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-DOM Jsoup parsing, as checks used to do it, against the streaming
+ * {@link HtmlExtractor}. Run with the gc profiler (enabled in build.gradle)
+ * to compare allocation per operation alongside time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExtractionBenchmark {
+    private static final long MAX_BODY_BYTES = 1024 * 1024;
+
+    @Param({"small", "medium", "huge"})
+    private String page;
+
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int paragraphs = switch (page) {
+            case "small" -> 10;
+            case "medium" -> 2_000;
+            case "huge" -> 200_000;
+            default -> throw new IllegalArgumentException("Unknown page size: " + page);
+        };
+        body = buildPage(paragraphs).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String buildPage(int paragraphs) {
+        var html = new StringBuilder("<!DOCTYPE html><html lang='en'><head>")
+                .append("<meta name=\"description\" content=\"statements of great people\">")
+                .append("<title>Test page</title></head><body>")
+                .append("<h1>Do not expect a miracle, <em>miracles</em> yourself!</h1>");
+        for (int i = 0; i < paragraphs; i++) {
+            html.append("<div class=\"item\"><p>Paragraph ").append(i)
+                    .append(" with <a href=\"/link/").append(i).append("\">a link</a> and some text.</p></div>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    @Benchmark
+    public void jsoupParse(Blackhole blackhole) {
+        Document doc = Jsoup.parse(new String(body, StandardCharsets.UTF_8));
+        var h1 = doc.selectFirst("h1");
+        var description = doc.selectFirst("meta[name=description]");
+        blackhole.consume(doc.title());
+        blackhole.consume(h1 != null ? h1.text() : "");
+        blackhole.consume(description != null ? description.attr("content") : "");
+    }
+
+    @Benchmark
+    public HtmlExtractor.Result streamingExtract() throws IOException {
+        return HtmlExtractor.extract(new ByteArrayInputStream(body), StandardCharsets.UTF_8, MAX_BODY_BYTES);
+    }
+}
@@ -0,0 +1,115 @@
+package hexlet.code.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.service.HostCircuitBreaker;
+import hexlet.code.service.HostRateLimiter;
+import hexlet.code.service.PageFetcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole {@link PageFetcher} path against a local origin: request, body read
+ * under the size cap, hashing and extraction. {@code firstCheck} parses the page,
+ * {@code unchangedRecheck} stops at the matching hash. Pages come with and without
+ * Content-Length, since without it the body buffer has to grow. The huge page is
+ * cut at the 1 MiB cap. Run with the gc profiler to see allocation per fetch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PageFetcherBenchmark {
+    private static final long MAX_BODY_BYTES = 1024 * 1024;
+
+    @Param({"small", "medium", "huge"})
+    private String page;
+
+    @Param({"true", "false"})
+    private boolean contentLength;
+
+    private HttpServer server;
+    private PageFetcher fetcher;
+    private String url;
+    private UrlCheck previous;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        int paragraphs = switch (page) {
+            case "small" -> 10;
+            case "medium" -> 2_000;
+            case "huge" -> 200_000;
+            default -> throw new IllegalArgumentException("Unknown page size: " + page);
+        };
+        var body = buildPage(paragraphs).getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            // Длина 0 включает chunked-передачу, то есть ответ без Content-Length
+            exchange.sendResponseHeaders(200, contentLength ? body.length : 0);
+            try (var out = exchange.getResponseBody()) {
+                out.write(body);
+            } catch (IOException e) {
+                // Клиент закрыл соединение на лимите размера тела
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        // Без ограничений по хосту: меряем сам запрос и разбор ответа
+        fetcher = new PageFetcher(Duration.ofSeconds(5), Duration.ofSeconds(30), MAX_BODY_BYTES,
+                new HostRateLimiter(1e9, 1_000_000), new HostCircuitBreaker(Integer.MAX_VALUE, Duration.ofSeconds(1)));
+
+        var first = fetcher.fetch(url, null);
+        previous = new UrlCheck();
+        previous.setStatusCode(first.getStatusCode());
+        previous.setTitle(first.getPage().getTitle());
+        previous.setH1(first.getPage().getH1());
+        previous.setDescription(first.getPage().getDescription());
+        previous.setBodyHash(first.getBodyHash());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static String buildPage(int paragraphs) {
+        var html = new StringBuilder("<!DOCTYPE html><html lang='en'><head>")
+                .append("<meta name=\"description\" content=\"statements of great people\">")
+                .append("<title>Test page</title></head><body>")
+                .append("<h1>Do not expect a miracle, <em>miracles</em> yourself!</h1>");
+        for (int i = 0; i < paragraphs; i++) {
+            html.append("<div class=\"item\"><p>Paragraph ").append(i)
+                    .append(" with <a href=\"/link/").append(i).append("\">a link</a> and some text.</p></div>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    @Benchmark
+    public PageFetcher.PageResponse firstCheck() throws IOException, InterruptedException {
+        return fetcher.fetch(url, null);
+    }
+
+    @Benchmark
+    public PageFetcher.PageResponse unchangedRecheck() throws IOException, InterruptedException {
+        return fetcher.fetch(url, previous);
+    }
+}
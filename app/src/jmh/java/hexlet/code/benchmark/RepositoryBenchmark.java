@@ -0,0 +1,126 @@
+package hexlet.code.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.BaseRepository;
+import hexlet.code.repository.KeysetPage;
+import hexlet.code.repository.Migrations;
+import hexlet.code.repository.PageRequest;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository queries against an in-memory H2 seeded with {@code rows} URLs, one check
+ * per URL and a "hot" URL (id 1) with {@link #HOT_URL_CHECKS} checks of history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RepositoryBenchmark {
+    private static final long HOT_URL_ID = 1;
+    private static final int HOT_URL_CHECKS = 1_000;
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    private HikariDataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        var config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:bench_" + rows + ";DB_CLOSE_DELAY=-1;");
+        dataSource = new HikariDataSource(config);
+        BaseRepository.dataSource = dataSource;
+        // Кэш отключен: меряем запросы, а не попадания в память
+        UrlRepository.configureCache(0, Duration.ZERO);
+
+        Migrations.migrate(dataSource);
+
+        try (var connection = dataSource.getConnection()) {
+            try (var urls = connection.prepareStatement("INSERT INTO urls (name, created_at) "
+                    + "SELECT 'https://site' || X || '.example.com', DATEADD('SECOND', X, TIMESTAMP '2020-01-01 00:00:00') "
+                    + "FROM SYSTEM_RANGE(1, ?)")) {
+                urls.setInt(1, rows);
+                urls.executeUpdate();
+            }
+            try (var checks = connection.prepareStatement("INSERT INTO url_checks "
+                    + "(status_code, title, h1, description, url_id, created_at) "
+                    + "SELECT 200, 'Title ' || X, 'H1 ' || X, 'Description ' || X, X, "
+                    + "DATEADD('SECOND', X, TIMESTAMP '2021-01-01 00:00:00') FROM SYSTEM_RANGE(1, ?)")) {
+                checks.setInt(1, rows);
+                checks.executeUpdate();
+            }
+            try (var history = connection.prepareStatement("INSERT INTO url_checks "
+                    + "(status_code, title, h1, description, url_id, created_at) "
+                    + "SELECT 200, 'Title', 'H1', 'Description', ?, "
+                    + "DATEADD('MINUTE', X, TIMESTAMP '2022-01-01 00:00:00') FROM SYSTEM_RANGE(1, ?)")) {
+                history.setLong(1, HOT_URL_ID);
+                history.setInt(2, HOT_URL_CHECKS);
+                history.executeUpdate();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (var connection = dataSource.getConnection();
+             var statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        dataSource.close();
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+
+    @Benchmark
+    public List<Url> urlFindAll() throws SQLException {
+        return UrlRepository.findAll();
+    }
+
+    @Benchmark
+    public KeysetPage<Url> urlFindFirstPageWithLatestChecks() throws SQLException {
+        return UrlRepository.findPageWithLatestChecks(PageRequest.first(25));
+    }
+
+    @Benchmark
+    public Optional<Url> urlFindById() throws SQLException {
+        return UrlRepository.findById(randomId());
+    }
+
+    @Benchmark
+    public List<UrlCheck> checkFindByUrlIdHot() throws SQLException {
+        return UrlCheckRepository.findByUrlId(HOT_URL_ID);
+    }
+
+    @Benchmark
+    public KeysetPage<UrlCheck> checkFindFirstPageByUrlIdHot() throws SQLException {
+        return UrlCheckRepository.findPageByUrlId(HOT_URL_ID, PageRequest.first(25));
+    }
+
+    @Benchmark
+    public Optional<UrlCheck> checkFindLatestCheck() throws SQLException {
+        return UrlCheckRepository.findLatestCheck(randomId());
+    }
+}
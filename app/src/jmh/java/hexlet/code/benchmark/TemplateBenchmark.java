@@ -0,0 +1,102 @@
+package hexlet.code.benchmark;
+
+import gg.jte.ContentType;
+import gg.jte.TemplateEngine;
+import gg.jte.output.StringOutput;
+import gg.jte.output.Utf8ByteOutput;
+import gg.jte.resolve.ResourceCodeResolver;
+import hexlet.code.dto.UrlPage;
+import hexlet.code.dto.UrlsPage;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the two data-heavy pages with a full page (25 rows) of data,
+ * plus the production path: precompiled templates written as UTF-8 bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateBenchmark {
+    private static final int ROWS = 25;
+
+    private TemplateEngine templateEngine;
+    private TemplateEngine precompiledEngine;
+    private UrlsPage urlsPage;
+    private UrlPage urlPage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var codeResolver = new ResourceCodeResolver("templates", TemplateBenchmark.class.getClassLoader());
+        templateEngine = TemplateEngine.create(codeResolver, ContentType.Html);
+        // Классы, сгенерированные плагином jte при сборке, как в продакшн
+        precompiledEngine = TemplateEngine.createPrecompiled(ContentType.Html);
+
+        var urls = new ArrayList<Url>();
+        var checks = new ArrayList<UrlCheck>();
+        for (int i = 0; i < ROWS; i++) {
+            var url = new Url("https://site" + i + ".example.com");
+            url.setId(i + 1);
+            var check = new UrlCheck();
+            check.setId((long) i + 1);
+            check.setUrlId(1L);
+            check.setStatusCode(200);
+            check.setTitle("Title " + i);
+            check.setH1("H1 " + i);
+            check.setDescription("Description of page " + i);
+            check.setCreatedAt(LocalDateTime.now());
+            url.setLatestCheck(check);
+            urls.add(url);
+            checks.add(check);
+        }
+
+        urlsPage = new UrlsPage();
+        urlsPage.setUrls(urls);
+        urlPage = new UrlPage();
+        urlPage.setUrl(urls.getFirst());
+        urlPage.setChecks(checks);
+
+        // Компилируем шаблоны заранее, чтобы не мерить первую компиляцию
+        renderIndex();
+        renderShow();
+        renderIndexPrecompiledUtf8();
+    }
+
+    @Benchmark
+    public String renderIndex() {
+        var output = new StringOutput();
+        templateEngine.render("urls/index.jte", Map.of("page", urlsPage), output);
+        return output.toString();
+    }
+
+    @Benchmark
+    public String renderShow() {
+        var output = new StringOutput();
+        templateEngine.render("urls/show.jte", Map.of("page", urlPage), output);
+        return output.toString();
+    }
+
+    @Benchmark
+    public byte[] renderIndexPrecompiledUtf8() throws IOException {
+        var output = new Utf8ByteOutput();
+        precompiledEngine.render("urls/index.jte", Map.of("page", urlsPage), output);
+        var bytes = new ByteArrayOutputStream(output.getContentLength());
+        output.writeTo(bytes);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,48 @@
+package hexlet.code.load;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of one route. Samples are kept as they are and sorted once for the
+ * report, so percentiles are exact; a run of a few minutes at a few thousand
+ * requests per second fits in memory easily.
+ */
+final class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count;
+    private long errors;
+
+    synchronized void record(long nanos, boolean error) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+        if (error) {
+            errors++;
+        }
+    }
+
+    synchronized Snapshot snapshot() {
+        var sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return new Snapshot(sorted, errors);
+    }
+
+    record Snapshot(long[] sorted, long errors) {
+        long count() {
+            return sorted.length;
+        }
+
+        double percentileMillis(double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.clamp(index, 0, sorted.length - 1)] / 1e6;
+        }
+
+        double maxMillis() {
+            return sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6;
+        }
+    }
+}
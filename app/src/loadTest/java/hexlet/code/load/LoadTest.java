@@ -0,0 +1,266 @@
+package hexlet.code.load;
+
+import hexlet.code.App;
+import hexlet.code.model.Url;
+import hexlet.code.repository.BaseRepository;
+import hexlet.code.repository.UrlRepository;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process load test: starts the app on a random port against in-memory H2,
+ * seeds it with the sites of a local {@link OriginFarm} and sends a weighted mix
+ * of page views, API calls and check requests at a fixed rate. Reports throughput
+ * and latency percentiles per route and the number of checks completed. Nothing
+ * leaves the machine, so runs on different commits can be compared directly.
+ *
+ * <p>Options are {@code key=value} arguments, see {@link Options}; for example
+ * {@code ./gradlew loadTest -PloadTest.args="rate=500 duration=60 origin-latency-ms=300"}.
+ */
+public final class LoadTest {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private record Route(String name, int weight, String method, String pathTemplate) {
+        HttpRequest request(String base, long urlId) {
+            var uri = URI.create(base + pathTemplate.replace("{id}", Long.toString(urlId)));
+            var builder = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT);
+            return "POST".equals(method)
+                    ? builder.POST(HttpRequest.BodyPublishers.noBody()).build()
+                    : builder.GET().build();
+        }
+
+        Route withWeight(int newWeight) {
+            return new Route(name, newWeight, method, pathTemplate);
+        }
+    }
+
+    private static final Map<String, Route> ROUTES = Map.of(
+            "index", new Route("index", 0, "GET", "/urls"),
+            "show", new Route("show", 0, "GET", "/urls/{id}"),
+            "search", new Route("search", 0, "GET", "/urls?q=load+site"),
+            "api", new Route("api", 0, "GET", "/api/urls"),
+            "api-checks", new Route("api-checks", 0, "GET", "/api/urls/{id}/checks"),
+            "check", new Route("check", 0, "POST", "/api/urls/{id}/checks"));
+
+    /**
+     * Run settings with their defaults.
+     */
+    static final class Options {
+        private int rate = 200;
+        private Duration duration = Duration.ofSeconds(30);
+        private Duration warmup = Duration.ofSeconds(10);
+        private int origins = 50;
+        private long originLatencyMillis = 100;
+        private int bodyBytes = 50 * 1024;
+        private double errorRate = 0.02;
+        private int maxInFlight = 10_000;
+        private String mix = "index:20,show:35,search:10,api:15,api-checks:10,check:10";
+        private String label = "";
+        private Path out;
+
+        static Options parse(String[] args) {
+            var options = new Options();
+            for (var arg : args) {
+                var pair = arg.split("=", 2);
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Expected key=value, got " + arg);
+                }
+                var value = pair[1];
+                switch (pair[0]) {
+                    case "rate" -> options.rate = Integer.parseInt(value);
+                    case "duration" -> options.duration = Duration.ofSeconds(Long.parseLong(value));
+                    case "warmup" -> options.warmup = Duration.ofSeconds(Long.parseLong(value));
+                    case "origins" -> options.origins = Integer.parseInt(value);
+                    case "origin-latency-ms" -> options.originLatencyMillis = Long.parseLong(value);
+                    case "body-bytes" -> options.bodyBytes = Integer.parseInt(value);
+                    case "error-rate" -> options.errorRate = Double.parseDouble(value);
+                    case "max-in-flight" -> options.maxInFlight = Integer.parseInt(value);
+                    case "mix" -> options.mix = value;
+                    case "label" -> options.label = value;
+                    case "out" -> options.out = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + pair[0]);
+                }
+            }
+            return options;
+        }
+
+        List<Route> routes() {
+            var routes = new ArrayList<Route>();
+            for (var part : mix.split(",")) {
+                var pair = part.trim().split(":", 2);
+                var route = ROUTES.get(pair[0]);
+                if (route == null || pair.length != 2) {
+                    throw new IllegalArgumentException("Bad mix entry " + part + ", routes are " + ROUTES.keySet());
+                }
+                routes.add(route.withWeight(Integer.parseInt(pair[1])));
+            }
+            return routes;
+        }
+    }
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = Options.parse(args);
+        var routes = options.routes();
+
+        try (var farm = new OriginFarm(options.origins, options.originLatencyMillis, options.bodyBytes,
+                options.errorRate)) {
+            var app = App.getApp();
+            app.start(0);
+            try (var client = HttpClient.newBuilder()
+                    .connectTimeout(REQUEST_TIMEOUT)
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build()) {
+                var ids = seed(farm.urls());
+                var base = "http://localhost:" + app.port();
+
+                System.out.printf("Warming up for %d s%n", options.warmup.toSeconds());
+                run(client, base, routes, ids, options, options.warmup, new HashMap<>());
+
+                System.out.printf("Measuring for %d s at %d req/s%n", options.duration.toSeconds(), options.rate);
+                var recorders = new LinkedHashMap<String, LatencyRecorder>();
+                routes.forEach(route -> recorders.put(route.name(), new LatencyRecorder()));
+                long checksBefore = countChecks();
+                long startedAt = System.nanoTime();
+                long dropped = run(client, base, routes, ids, options, options.duration, recorders);
+                double seconds = (System.nanoTime() - startedAt) / 1e9;
+                long checks = countChecks() - checksBefore;
+
+                report(options, recorders, seconds, dropped, checks, farm);
+            } finally {
+                app.stop();
+            }
+        }
+    }
+
+    private static List<Long> seed(List<String> names) throws SQLException {
+        var urls = new ArrayList<Url>();
+        names.forEach(name -> urls.add(new Url(name)));
+        return UrlRepository.saveAllIgnoringDuplicates(urls).stream().map(Url::getId).toList();
+    }
+
+    /**
+     * Sends requests on a fixed schedule for {@code duration}, without waiting for
+     * responses. Latency is counted from the moment a request was due, not from when
+     * it was actually sent, so a stalled server is not hidden by a stalled sender.
+     *
+     * @return requests not sent because {@code maxInFlight} were already outstanding
+     */
+    private static long run(HttpClient client, String base, List<Route> routes, List<Long> ids, Options options,
+                            Duration duration, Map<String, LatencyRecorder> recorders) throws InterruptedException {
+        int totalWeight = routes.stream().mapToInt(Route::weight).sum();
+        long interval = 1_000_000_000L / options.rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        var inFlight = new AtomicInteger();
+        var random = ThreadLocalRandom.current();
+        long dropped = 0;
+
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (inFlight.get() >= options.maxInFlight) {
+                dropped++;
+                continue;
+            }
+
+            var route = pick(routes, random.nextInt(totalWeight));
+            var recorder = recorders.computeIfAbsent(route.name(), name -> new LatencyRecorder());
+            var request = route.request(base, ids.get(random.nextInt(ids.size())));
+            long dueAt = due;
+            inFlight.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        recorder.record(System.nanoTime() - dueAt, error != null || response.statusCode() >= 400);
+                        inFlight.decrementAndGet();
+                    });
+        }
+
+        long drainUntil = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+        return dropped;
+    }
+
+    private static Route pick(List<Route> routes, int point) {
+        int upTo = 0;
+        for (var route : routes) {
+            upTo += route.weight();
+            if (point < upTo) {
+                return route;
+            }
+        }
+        return routes.getLast();
+    }
+
+    private static long countChecks() throws SQLException {
+        try (var conn = BaseRepository.getConnection();
+             var stmt = conn.createStatement();
+             var resultSet = stmt.executeQuery("SELECT COUNT(*) FROM url_checks")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static void report(Options options, Map<String, LatencyRecorder> recorders, double seconds,
+                               long dropped, long checks, OriginFarm farm) throws IOException {
+        var threads = App.isVirtualThreads() ? "virtual" : "platform";
+        System.out.printf(Locale.ROOT, "%nTarget %d req/s for %.1f s on %s threads; %d origins, latency %d ms, "
+                        + "body %d B, error rate %.2f%n", options.rate, seconds, threads, options.origins,
+                options.originLatencyMillis, options.bodyBytes, options.errorRate);
+        System.out.printf(Locale.ROOT, "%-12s %9s %7s %9s %9s %9s %9s %9s%n",
+                "route", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+
+        var csv = new StringBuilder();
+        for (var entry : recorders.entrySet()) {
+            var stats = entry.getValue().snapshot();
+            double throughput = stats.count() / seconds;
+            System.out.printf(Locale.ROOT, "%-12s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), stats.count(), stats.errors(), throughput, stats.percentileMillis(50),
+                    stats.percentileMillis(99), stats.percentileMillis(99.9), stats.maxMillis());
+            csv.append(String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%.1f,%.2f,%.2f,%.2f,%.2f%n",
+                    options.label, threads, entry.getKey(), options.rate, stats.count(), stats.errors(), throughput,
+                    stats.percentileMillis(50), stats.percentileMillis(99), stats.percentileMillis(99.9),
+                    stats.maxMillis()));
+        }
+        System.out.printf(Locale.ROOT, "Not sent (over %d in flight): %d%n", options.maxInFlight, dropped);
+        System.out.printf(Locale.ROOT, "Checks completed: %d (%.1f/s); origin responses %d, of them 500: %d%n",
+                checks, checks / seconds, farm.getServed(), farm.getFailed());
+
+        if (options.out != null) {
+            // Строки разных прогонов копятся в одном файле и различаются меткой (например, хешем коммита)
+            if (Files.notExists(options.out)) {
+                Files.writeString(options.out,
+                        "label,threads,route,target_rps,requests,errors,rps,p50_ms,p99_ms,p999_ms,max_ms\n",
+                        StandardCharsets.UTF_8);
+            }
+            Files.writeString(options.out, csv, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package hexlet.code.load;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local sites for the checks to fetch: {@code size} MockWebServer instances on
+ * their own ports, so each is a separate host for the app. Every response waits
+ * {@code latencyMillis} before the headers, carries a page of about
+ * {@code bodyBytes} and fails with 500 at {@code errorRate}.
+ */
+public final class OriginFarm implements AutoCloseable {
+    private final List<MockWebServer> servers = new ArrayList<>();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public OriginFarm(int size, long latencyMillis, int bodyBytes, double errorRate) throws IOException {
+        for (int i = 0; i < size; i++) {
+            var body = page(i, bodyBytes);
+            var server = new MockWebServer();
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    served.incrementAndGet();
+                    if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                        failed.incrementAndGet();
+                        return new MockResponse().setResponseCode(500)
+                                .setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+                    }
+                    return new MockResponse().setBody(body)
+                            .setHeader("Content-Type", "text/html; charset=utf-8")
+                            .setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+                }
+            });
+            server.start();
+            servers.add(server);
+        }
+    }
+
+    /**
+     * Site addresses as the app stores them: scheme, host and port.
+     */
+    public List<String> urls() {
+        return servers.stream()
+                .map(server -> server.url("/").toString().replaceAll("/$", ""))
+                .toList();
+    }
+
+    public long getServed() {
+        return served.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (var server : servers) {
+            server.shutdown();
+        }
+    }
+
+    // Страница с заголовками для разбора и заполнителем до нужного размера
+    private static String page(int index, int bodyBytes) {
+        var html = new StringBuilder()
+                .append("<!DOCTYPE html><html><head><title>Load site ").append(index).append("</title>")
+                .append("<meta name=\"description\" content=\"Simulated origin ").append(index).append("\">")
+                .append("</head><body><h1>Site ").append(index).append("</h1><p>");
+        while (html.length() < bodyBytes - "</p></body></html>".length()) {
+            html.append("lorem ipsum dolor sit amet ");
+        }
+        return html.append("</p></body></html>").toString();
+    }
+}
@@ -5,30 +5,186 @@ import com.zaxxer.hikari.HikariDataSource;
 import gg.jte.ContentType;
 import gg.jte.TemplateEngine;
 import gg.jte.resolve.ResourceCodeResolver;
+import hexlet.code.controller.ApiController;
+import hexlet.code.controller.ExportController;
+import hexlet.code.controller.MetricsController;
 import hexlet.code.controller.RootController;
 import hexlet.code.controller.UrlCheckController;
 import hexlet.code.controller.UrlsController;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.metrics.PinningMonitor;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
 import hexlet.code.repository.BaseRepository;
+import hexlet.code.repository.Migrations;
+import hexlet.code.repository.RepositoryListener;
+import hexlet.code.repository.UnitOfWork;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.service.BulkChecker;
+import hexlet.code.service.CheckQueue;
+import hexlet.code.service.CheckRetention;
+import hexlet.code.service.CheckSchedule;
+import hexlet.code.service.CheckScheduler;
+import hexlet.code.service.CheckWriter;
+import hexlet.code.service.HostCircuitBreaker;
+import hexlet.code.service.HostRateLimiter;
+import hexlet.code.service.PageFetcher;
+import hexlet.code.search.SearchIndexRefresher;
+import hexlet.code.search.UrlSearchIndex;
+import hexlet.code.service.UrlChecker;
+import hexlet.code.service.UrlImporter;
 import hexlet.code.utils.NamedRoutes;
+import hexlet.code.utils.PageCache;
 import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
 import io.javalin.rendering.template.JavalinJte;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
 import java.sql.SQLException;
-import java.util.stream.Collectors;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 public final class App {
+    private static final String REQUEST_STARTED_AT = "requestStartedAt";
+    private static final String UNIT_OF_WORK = "unitOfWork";
 
     private static int getPort() {
         String port = System.getenv().getOrDefault("PORT", "7070");
         return Integer.parseInt(port);
     }
 
+    private static int getCheckWorkers() {
+        return Integer.parseInt(System.getenv().getOrDefault("CHECK_WORKERS", "4"));
+    }
+
+    private static int getCheckQueueCapacity() {
+        return Integer.parseInt(System.getenv().getOrDefault("CHECK_QUEUE_CAPACITY", "1000"));
+    }
+
+    private static long getCheckStateTtlSeconds() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_STATE_TTL_SECONDS", "600"));
+    }
+
+    private static int getBulkCheckConcurrency() {
+        return Integer.parseInt(System.getenv().getOrDefault("BULK_CHECK_CONCURRENCY", "64"));
+    }
+
+    private static int getBulkCheckPerHost() {
+        return Integer.parseInt(System.getenv().getOrDefault("BULK_CHECK_PER_HOST", "2"));
+    }
+
+    private static long getCheckMaxBodyBytes() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_MAX_BODY_BYTES", "1048576"));
+    }
+
+    private static long getCheckConnectTimeoutSeconds() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_CONNECT_TIMEOUT_SECONDS", "5"));
+    }
+
+    private static long getCheckReadTimeoutSeconds() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_READ_TIMEOUT_SECONDS", "15"));
+    }
+
+    private static double getCheckHostRatePerSecond() {
+        return Double.parseDouble(System.getenv().getOrDefault("CHECK_HOST_RATE_PER_SECOND", "1"));
+    }
+
+    private static int getCheckHostBurst() {
+        return Integer.parseInt(System.getenv().getOrDefault("CHECK_HOST_BURST", "5"));
+    }
+
+    private static int getCheckBreakerFailures() {
+        return Integer.parseInt(System.getenv().getOrDefault("CHECK_BREAKER_FAILURES", "5"));
+    }
+
+    private static long getCheckBreakerOpenSeconds() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_BREAKER_OPEN_SECONDS", "60"));
+    }
+
+    private static int getCheckWriteBatchSize() {
+        return Integer.parseInt(System.getenv().getOrDefault("CHECK_WRITE_BATCH_SIZE", "100"));
+    }
+
+    private static long getCheckWriteMaxDelayMillis() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_WRITE_MAX_DELAY_MS", "50"));
+    }
+
+    private static long getCheckReuseSeconds() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_REUSE_SECONDS", "2"));
+    }
+
+    private static int getUrlImportBatchSize() {
+        return Integer.parseInt(System.getenv().getOrDefault("URL_IMPORT_BATCH_SIZE", "1000"));
+    }
+
+    private static int getUrlCacheSize() {
+        return Integer.parseInt(System.getenv().getOrDefault("URL_CACHE_SIZE", "10000"));
+    }
+
+    private static long getUrlCacheTtlSeconds() {
+        return Long.parseLong(System.getenv().getOrDefault("URL_CACHE_TTL_SECONDS", "300"));
+    }
+
+    private static int getPageCacheSize() {
+        return Integer.parseInt(System.getenv().getOrDefault("PAGE_CACHE_SIZE", "1000"));
+    }
+
+    private static long getPageCacheTtlSeconds() {
+        return Long.parseLong(System.getenv().getOrDefault("PAGE_CACHE_TTL_SECONDS", "600"));
+    }
+
+    private static boolean isCheckSchedulerEnabled() {
+        return Boolean.parseBoolean(System.getenv().getOrDefault("CHECK_SCHEDULER_ENABLED", "true"));
+    }
+
+    private static long getCheckSchedulerTickSeconds() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_SCHEDULER_TICK_SECONDS", "30"));
+    }
+
+    private static long getCheckRetentionDays() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_RETENTION_DAYS", "30"));
+    }
+
+    private static long getCheckRetentionIntervalMinutes() {
+        return Long.parseLong(System.getenv().getOrDefault("CHECK_RETENTION_INTERVAL_MINUTES", "60"));
+    }
+
+    private static long getSearchIndexRebuildMinutes() {
+        return Long.parseLong(System.getenv().getOrDefault("SEARCH_INDEX_REBUILD_MINUTES", "10"));
+    }
+
+    private static CheckSchedule createCheckSchedule() {
+        var env = System.getenv();
+        return new CheckSchedule(
+                Duration.ofMinutes(Long.parseLong(env.getOrDefault("CHECK_INTERVAL_MINUTES", "1440"))),
+                Duration.ofMinutes(Long.parseLong(env.getOrDefault("CHECK_MIN_INTERVAL_MINUTES", "60"))),
+                Duration.ofMinutes(Long.parseLong(env.getOrDefault("CHECK_MAX_INTERVAL_MINUTES", "10080"))),
+                Double.parseDouble(env.getOrDefault("CHECK_INTERVAL_JITTER", "0.2")));
+    }
+
+    /**
+     * Whether HTTP handlers run on virtual threads instead of Jetty's platform thread pool.
+     * No platform vs virtual comparison has been recorded yet, so the default stays with
+     * the Jetty pool the app has always run on. {@code make load-compare} runs both modes
+     * into load.csv; set the default from its throughput and p99 columns and note the
+     * figures here.
+     */
+    public static boolean isVirtualThreads() {
+        return Boolean.parseBoolean(System.getenv().getOrDefault("VIRTUAL_THREADS", "false"));
+    }
+
+    private static boolean isPinningMonitorEnabled() {
+        return Boolean.parseBoolean(System.getenv().getOrDefault("PINNING_MONITOR_ENABLED", "true"));
+    }
+
+    private static long getPinningThresholdMillis() {
+        return Long.parseLong(System.getenv().getOrDefault("PINNING_THRESHOLD_MS", "20"));
+    }
+
     private static String getDatabaseUrl() {
         return System.getenv().getOrDefault("JDBC_DATABASE_URL",
                 "jdbc:h2:mem:project;LOCK_TIMEOUT=10000;LOCK_MODE=0;DB_CLOSE_DELAY=-1;");
@@ -56,17 +212,108 @@ public final class App {
         }
 
         var dataSource = new HikariDataSource(hikariConfig);
-        String sql = readResourceFile("schema.sql");
-
-        try (var connection = dataSource.getConnection();
-             var statement = connection.createStatement()) {
-            statement.execute(sql);
-        }
+        // Применяем только новые миграции; на актуальной схеме это один запрос
+        Migrations.migrate(dataSource);
         BaseRepository.dataSource = dataSource;
+        // Новое приложение начинает с пустых кэшей
+        UrlRepository.configureCache(getUrlCacheSize(), Duration.ofSeconds(getUrlCacheTtlSeconds()));
+
+        var circuitBreaker = new HostCircuitBreaker(getCheckBreakerFailures(),
+                Duration.ofSeconds(getCheckBreakerOpenSeconds()));
+        var pageFetcher = new PageFetcher(Duration.ofSeconds(getCheckConnectTimeoutSeconds()),
+                Duration.ofSeconds(getCheckReadTimeoutSeconds()), getCheckMaxBodyBytes(),
+                new HostRateLimiter(getCheckHostRatePerSecond(), getCheckHostBurst()), circuitBreaker);
+        var checkWriter = new CheckWriter(getCheckWriteBatchSize(), getCheckWriteMaxDelayMillis(), 10_000);
+        var checkSchedule = createCheckSchedule();
+        var urlChecker = new UrlChecker(pageFetcher, checkWriter, checkSchedule,
+                Duration.ofSeconds(getCheckReuseSeconds()));
+        var checkQueue = new CheckQueue(urlChecker, getCheckWorkers(), getCheckQueueCapacity(),
+                Duration.ofSeconds(getCheckStateTtlSeconds()));
+        var checkScheduler = new CheckScheduler(checkQueue, checkSchedule,
+                Duration.ofSeconds(getCheckSchedulerTickSeconds()), 1_000);
+        var checkRetention = new CheckRetention(Duration.ofDays(getCheckRetentionDays()),
+                Duration.ofMinutes(getCheckRetentionIntervalMinutes()), 500);
+        UrlCheckController.checkQueue = checkQueue;
+        var bulkChecker = new BulkChecker(urlChecker, getBulkCheckConcurrency(), getBulkCheckPerHost());
+        UrlCheckController.bulkChecker = bulkChecker;
+
+        // Кэш страниц сбрасывается при сохранении сайта или его проверок
+        var templateEngine = createTemplateEngine();
+        var pageCache = new PageCache(getPageCacheSize(), Duration.ofSeconds(getPageCacheTtlSeconds()));
+        UrlsController.templateEngine = templateEngine;
+        UrlsController.pageCache = pageCache;
+        UrlsController.circuitBreaker = circuitBreaker;
+        UrlsController.urlImporter = new UrlImporter(getUrlImportBatchSize());
+        // Поисковый индекс строится при старте и дальше обновляется при сохранениях; периодическое
+        // перестроение подхватывает сайты и проверки, сохраненные другими экземплярами приложения
+        var searchIndex = new UrlSearchIndex();
+        searchIndex.rebuild();
+        var searchIndexRefresher = new SearchIndexRefresher(searchIndex,
+                Duration.ofMinutes(getSearchIndexRebuildMinutes()));
+        UrlsController.searchIndex = searchIndex;
+        BaseRepository.listener = new RepositoryListener() {
+            @Override
+            public void urlSaved(Url url) {
+                searchIndex.put(url, null);
+                UrlsController.invalidatePages(url.getId());
+            }
+
+            @Override
+            public void checkSaved(UrlCheck check) {
+                searchIndex.updateCheck(check);
+                UrlsController.invalidatePages(check.getUrlId());
+            }
+
+            @Override
+            public void checksRolledUp(long urlId) {
+                UrlsController.invalidatePages(urlId);
+            }
+        };
+
+        registerGauges(dataSource, checkQueue, checkWriter);
+        Metrics.counter("page_cache_hits_total", "Rendered page cache hits", () -> pageCache.getStats().getHits());
+        Metrics.counter("page_cache_misses_total", "Rendered page cache misses",
+                () -> pageCache.getStats().getMisses());
+        Metrics.gauge("check_scheduler_planned", "Checks coming due within the current tick",
+                checkScheduler::getPlannedCount);
+        Metrics.gauge("check_host_circuits_open", "Hosts whose checks are paused by the circuit breaker",
+                circuitBreaker::countOpen);
+        Metrics.gauge("url_search_index_documents", "URLs in the search index", searchIndex::size);
+
+        // Пиннинг касается и фоновых виртуальных потоков (проверки, запись), поэтому монитор не зависит от режима HTTP
+        var pinningMonitor = new PinningMonitor(Duration.ofMillis(getPinningThresholdMillis()));
 
         var app = Javalin.create(config -> {
             config.bundledPlugins.enableDevLogging();
-            config.fileRenderer(new JavalinJte(createTemplateEngine()));
+            // Обработчики блокируются на JDBC; на виртуальных потоках их число ограничивает пул соединений,
+            // а не пул Jetty. Режим по умолчанию см. isVirtualThreads
+            config.useVirtualThreads = isVirtualThreads();
+            config.fileRenderer(new JavalinJte(templateEngine));
+            config.events(event -> event.serverStarted(() -> {
+                if (isPinningMonitorEnabled()) {
+                    pinningMonitor.start();
+                }
+                if (isCheckSchedulerEnabled()) {
+                    checkScheduler.start();
+                }
+                checkRetention.start();
+                if (getSearchIndexRebuildMinutes() > 0) {
+                    searchIndexRefresher.start();
+                }
+            }));
+            config.events(event -> event.serverStopping(() -> {
+                // Сначала доделываем проверки, затем дописываем их результаты
+                checkScheduler.stop();
+                checkRetention.stop();
+                searchIndexRefresher.stop();
+                bulkChecker.shutdown(10_000);
+                checkQueue.shutdown(10_000);
+                checkWriter.close();
+                log.info("Check writer stats: {} rows in {} batches, avg batch {}, avg flush {} ms",
+                        checkWriter.getStats().getRows(), checkWriter.getStats().getFlushes(),
+                        checkWriter.getStats().getAverageBatchSize(), checkWriter.getStats().getAverageFlushMillis());
+                pinningMonitor.close();
+            }));
 
             // Конфигурация для продакшн
             if (isProduction()) {
@@ -76,18 +323,56 @@ public final class App {
             }
         });
 
+        var firstRequestSeen = new AtomicBoolean();
         app.before(ctx -> {
+            ctx.attribute(REQUEST_STARTED_AT, System.nanoTime());
+            // Все запросы к БД в рамках HTTP-запроса идут через одно соединение
+            ctx.attribute(UNIT_OF_WORK, UnitOfWork.begin("http"));
             ctx.contentType("text/html; charset=utf-8");
         });
 
+        app.after(ctx -> {
+            UnitOfWork unitOfWork = ctx.attribute(UNIT_OF_WORK);
+            if (unitOfWork != null) {
+                unitOfWork.close();
+            }
+            Long startedAt = ctx.attribute(REQUEST_STARTED_AT);
+            if (startedAt != null) {
+                var status = Integer.toString(ctx.statusCode());
+                long elapsed = System.nanoTime() - startedAt;
+                Metrics.histogram("http_server_request_duration_seconds", "Latency of HTTP requests by route",
+                        "method", ctx.method().name(), "route", routeOf(ctx), "status", status)
+                        .observeNanos(elapsed);
+                // Первый запрос включает загрузку шаблонов, поэтому его время фиксируем отдельно
+                if (firstRequestSeen.compareAndSet(false, true)) {
+                    double seconds = elapsed / 1e9;
+                    Metrics.gauge("app_first_request_seconds", "Latency of the first served request", () -> seconds);
+                    log.info("First request {} {} served in {} ms", ctx.method(), ctx.path(), elapsed / 1_000_000);
+                }
+            }
+        });
+
         app.get("/", RootController::index);
+        app.get(NamedRoutes.metricsPath(), MetricsController::index);
         app.get(NamedRoutes.urlsPath(), UrlsController::index);
         app.post(NamedRoutes.urlsPath(), UrlsController::create);
+        app.post(NamedRoutes.checksPath(), UrlCheckController::createAll);
+        app.post(NamedRoutes.urlsImportPath(), UrlsController::importUrls);
         app.get(NamedRoutes.urlPath("{id}"), UrlsController::show);
         app.post(NamedRoutes.urlPathCheck("{id}"), UrlCheckController::create);
 
+        app.get(NamedRoutes.apiUrlsPath(), ApiController::urls);
+        app.get(NamedRoutes.apiUrlPath("{id}"), ApiController::url);
+        app.get(NamedRoutes.apiUrlChecksPath("{id}"), ApiController::checks);
+        app.post(NamedRoutes.apiUrlChecksPath("{id}"), ApiController::createCheck);
+        app.get(NamedRoutes.checksExportPath(), ExportController::checks);
+
         app.exception(SQLException.class, (e, ctx) -> {
             log.error("Database error", e);
+            if (isApiRequest(ctx)) {
+                ApiController.error(ctx, HttpStatus.INTERNAL_SERVER_ERROR, "Database error");
+                return;
+            }
             ctx.sessionAttribute("flash", "Ошибка базы данных");
             ctx.sessionAttribute("flashType", "danger");
             ctx.redirect("/");
@@ -95,6 +380,10 @@ public final class App {
 
         app.exception(Exception.class, (e, ctx) -> {
             log.error("Unexpected error", e);
+            if (isApiRequest(ctx)) {
+                ApiController.error(ctx, HttpStatus.INTERNAL_SERVER_ERROR, "Internal server error");
+                return;
+            }
             ctx.sessionAttribute("flash", "Внутренняя ошибка сервера");
             ctx.sessionAttribute("flashType", "danger");
             ctx.redirect("/");
@@ -103,22 +392,67 @@ public final class App {
         return app;
     }
 
+    // Клиентам API вместо редиректа с flash-сообщением нужен JSON с ошибкой
+    private static boolean isApiRequest(Context ctx) {
+        return ctx.path().startsWith("/api/");
+    }
+
+    // Шаблон маршрута вместо фактического пути, чтобы /urls/1 и /urls/2 попадали в одну серию
+    private static String routeOf(Context ctx) {
+        var route = ctx.endpointHandlerPath();
+        return route == null || route.isEmpty() ? "unmatched" : route;
+    }
+
+    private static void registerGauges(HikariDataSource dataSource, CheckQueue checkQueue, CheckWriter checkWriter) {
+        var pool = dataSource.getHikariPoolMXBean();
+        Metrics.gauge("hikari_connections_active", "Connections in use", pool::getActiveConnections);
+        Metrics.gauge("hikari_connections_idle", "Idle connections", pool::getIdleConnections);
+        Metrics.gauge("hikari_connections_pending", "Threads waiting for a connection",
+                pool::getThreadsAwaitingConnection);
+        Metrics.gauge("hikari_connections", "Open connections", pool::getTotalConnections);
+
+        Metrics.gauge("check_queue_size", "Checks waiting for a worker", checkQueue::getQueueSize);
+        Metrics.counter("check_writer_flushes_total", "Batches written by the check writer",
+                () -> checkWriter.getStats().getFlushes());
+        Metrics.counter("check_writer_rows_total", "Checks written by the check writer",
+                () -> checkWriter.getStats().getRows());
+        Metrics.counter("check_writer_flush_seconds_total", "Time spent writing check batches",
+                () -> checkWriter.getStats().getTotalFlushMillis() / 1000.0);
+
+        Metrics.counter("url_cache_hits_total", "URL lookup cache hits",
+                () -> UrlRepository.getIdCacheStats().getHits(), "cache", "id");
+        Metrics.counter("url_cache_hits_total", "URL lookup cache hits",
+                () -> UrlRepository.getNameCacheStats().getHits(), "cache", "name");
+        Metrics.counter("url_cache_misses_total", "URL lookup cache misses",
+                () -> UrlRepository.getIdCacheStats().getMisses(), "cache", "id");
+        Metrics.counter("url_cache_misses_total", "URL lookup cache misses",
+                () -> UrlRepository.getNameCacheStats().getMisses(), "cache", "name");
+        Metrics.counter("url_cache_evictions_total", "URL lookup cache evictions",
+                () -> UrlRepository.getIdCacheStats().getEvictions(), "cache", "id");
+        Metrics.counter("url_cache_evictions_total", "URL lookup cache evictions",
+                () -> UrlRepository.getNameCacheStats().getEvictions(), "cache", "name");
+    }
+
     private static TemplateEngine createTemplateEngine() {
+        // В продакшн используем шаблоны, скомпилированные при сборке: не нужен компилятор и прогрев
+        if (isProduction()) {
+            return TemplateEngine.createPrecompiled(ContentType.Html);
+        }
         ClassLoader classLoader = App.class.getClassLoader();
         ResourceCodeResolver codeResolver = new ResourceCodeResolver("templates", classLoader);
         TemplateEngine templateEngine = TemplateEngine.create(codeResolver, ContentType.Html);
+        templateEngine.setBinaryStaticContent(true);
         return templateEngine;
     }
 
-    private static String readResourceFile(String fileName) throws IOException {
-        var inputStream = App.class.getClassLoader().getResourceAsStream(fileName);
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-            return reader.lines().collect(Collectors.joining("\n"));
-        }
-    }
-
     public static void main(String[] args) throws SQLException, IOException {
         Javalin app = getApp();
         app.start(getPort());
+
+        long startupMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        Metrics.gauge("app_startup_seconds", "Time from JVM start until the server accepted requests",
+                () -> startupMillis / 1000.0);
+        log.info("Started in {} ms, request handlers on {} threads", startupMillis,
+                isVirtualThreads() ? "virtual" : "platform");
     }
 }
@@ -0,0 +1,178 @@
+package hexlet.code.controller;
+
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.PageRequest;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.service.CheckQueue;
+import hexlet.code.utils.JsonWriter;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * JSON API. Lists are paged forward with the same cursor tokens as the HTML
+ * pages: a response carries "next", which is passed back as "after". Rows are
+ * written to the response while they are read from the database.
+ */
+public class ApiController {
+    private static final int DEFAULT_LIMIT = 25;
+    private static final int MAX_LIMIT = 100;
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    public static void urls(Context ctx) throws SQLException, IOException {
+        var request = PageRequest.of(ctx.queryParam("after"), null, limit(ctx));
+        var json = open(ctx, HttpStatus.OK);
+        json.beginObject().name("items").beginArray();
+        var next = UrlRepository.streamPageWithLatestChecks(request, url -> writeUrl(json, url));
+        json.endArray().name("next").value(next).endObject();
+        json.flush();
+    }
+
+    public static void url(Context ctx) throws SQLException, IOException {
+        var id = pathId(ctx);
+        if (id == null) {
+            return;
+        }
+        var url = UrlRepository.findById(id).orElse(null);
+        if (url == null) {
+            error(ctx, HttpStatus.NOT_FOUND, "Url not found");
+            return;
+        }
+        url.setLatestCheck(UrlCheckRepository.findLatestCheck(id).orElse(null));
+        var checkState = UrlCheckController.checkQueue.getState(id).orElse(null);
+
+        var json = open(ctx, HttpStatus.OK);
+        json.beginObject();
+        writeUrlFields(json, url);
+        json.name("checkStatus").value(checkState != null ? checkState.getStatus().name() : null);
+        json.name("checkError").value(checkState != null ? checkState.getError() : null);
+        json.endObject();
+        json.flush();
+    }
+
+    public static void checks(Context ctx) throws SQLException, IOException {
+        var id = pathId(ctx);
+        if (id == null) {
+            return;
+        }
+        if (UrlRepository.findById(id).isEmpty()) {
+            error(ctx, HttpStatus.NOT_FOUND, "Url not found");
+            return;
+        }
+
+        var request = PageRequest.of(ctx.queryParam("after"), null, limit(ctx));
+        var json = open(ctx, HttpStatus.OK);
+        json.beginObject().name("items").beginArray();
+        var next = UrlCheckRepository.streamPageByUrlId(id, request, check -> writeCheck(json, check));
+        json.endArray().name("next").value(next).endObject();
+        json.flush();
+    }
+
+    public static void createCheck(Context ctx) throws SQLException, IOException {
+        var id = pathId(ctx);
+        if (id == null) {
+            return;
+        }
+        if (UrlRepository.findById(id).isEmpty()) {
+            error(ctx, HttpStatus.NOT_FOUND, "Url not found");
+            return;
+        }
+
+        // Как и в HTML-версии, проверка только ставится в очередь; ее статус виден в /api/urls/{id}
+        if (!UrlCheckController.checkQueue.submit(id)) {
+            error(ctx, HttpStatus.SERVICE_UNAVAILABLE, "Check queue is full, try again later");
+            return;
+        }
+        var status = UrlCheckController.checkQueue.getState(id)
+                .map(state -> state.getStatus().name())
+                .orElse(CheckQueue.Status.PENDING.name());
+        var json = open(ctx, HttpStatus.ACCEPTED);
+        json.beginObject().name("urlId").value(id).name("checkStatus").value(status).endObject();
+        json.flush();
+    }
+
+    public static void error(Context ctx, HttpStatus status, String message) {
+        var body = new StringWriter();
+        try {
+            new JsonWriter(body).beginObject().name("error").value(message).endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ctx.status(status).contentType(CONTENT_TYPE).result(body.toString());
+    }
+
+    private static JsonWriter open(Context ctx, HttpStatus status) {
+        ctx.status(status).contentType(CONTENT_TYPE);
+        return new JsonWriter(new BufferedWriter(new OutputStreamWriter(ctx.outputStream(), StandardCharsets.UTF_8)));
+    }
+
+    private static Long pathId(Context ctx) {
+        try {
+            return Long.parseLong(ctx.pathParam("id"));
+        } catch (NumberFormatException e) {
+            error(ctx, HttpStatus.BAD_REQUEST, "Url id must be a number");
+            return null;
+        }
+    }
+
+    private static int limit(Context ctx) {
+        var limit = ctx.queryParam("limit");
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            return Math.clamp(Integer.parseInt(limit), 1, MAX_LIMIT);
+        } catch (NumberFormatException e) {
+            return DEFAULT_LIMIT;
+        }
+    }
+
+    private static void writeUrl(JsonWriter json, Url url) throws IOException {
+        json.beginObject();
+        writeUrlFields(json, url);
+        json.endObject();
+    }
+
+    private static void writeUrlFields(JsonWriter json, Url url) throws IOException {
+        json.name("id").value(url.getId())
+                .name("name").value(url.getName())
+                .name("createdAt").value(format(url.getCreatedAt()))
+                .name("nextCheckAt").value(format(url.getNextCheckAt()));
+        json.name("latestCheck");
+        if (url.getLatestCheck() != null) {
+            writeCheck(json, url.getLatestCheck());
+        } else {
+            json.nullValue();
+        }
+    }
+
+    private static void writeCheck(JsonWriter json, UrlCheck check) throws IOException {
+        json.beginObject()
+                .name("id").value(check.getId())
+                .name("statusCode").value(check.getStatusCode())
+                .name("title").value(check.getTitle())
+                .name("h1").value(check.getH1())
+                .name("description").value(check.getDescription())
+                .name("truncated").value(check.isTruncated())
+                .name("ttfbMs").value(check.getTtfbMillis())
+                .name("downloadMs").value(check.getDownloadMillis())
+                .name("parseMs").value(check.getParseMillis())
+                .name("responseBytes").value(check.getResponseBytes())
+                .name("createdAt").value(format(check.getCreatedAt()))
+                .endObject();
+    }
+
+    private static String format(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.toString() : null;
+    }
+}
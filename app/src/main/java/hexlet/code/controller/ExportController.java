@@ -0,0 +1,71 @@
+package hexlet.code.controller;
+
+import hexlet.code.service.CheckExporter;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+public class ExportController {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Streams the check history. Query parameters: format=csv|ndjson (csv by default),
+     * from and to as ISO dates (both inclusive), urlId, and gzip=true for a .gz file.
+     */
+    public static void checks(Context ctx) throws SQLException, IOException {
+        CheckExporter.Format format;
+        LocalDateTime from;
+        LocalDateTime to;
+        Long urlId;
+        try {
+            var formatParam = ctx.queryParam("format");
+            format = CheckExporter.Format.valueOf(formatParam != null ? formatParam.toUpperCase(Locale.ROOT) : "CSV");
+            from = parseDate(ctx.queryParam("from"));
+            var toDate = parseDate(ctx.queryParam("to"));
+            to = toDate != null ? toDate.plusDays(1) : null;
+            var urlIdParam = ctx.queryParam("urlId");
+            urlId = urlIdParam != null ? Long.valueOf(urlIdParam) : null;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            ApiController.error(ctx, HttpStatus.BAD_REQUEST,
+                    "Expected format=csv|ndjson, from/to as yyyy-MM-dd and a numeric urlId");
+            return;
+        }
+        boolean gzip = Boolean.parseBoolean(ctx.queryParam("gzip"));
+
+        var extension = format == CheckExporter.Format.CSV ? "csv" : "ndjson";
+        ctx.contentType(format == CheckExporter.Format.CSV
+                ? "text/csv; charset=utf-8" : "application/x-ndjson; charset=utf-8");
+        if (gzip) {
+            extension += ".gz";
+            ctx.contentType("application/gzip");
+        }
+        ctx.header(Header.CONTENT_DISPOSITION, "attachment; filename=\"url_checks." + extension + "\"");
+
+        OutputStream out = ctx.outputStream();
+        if (gzip) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        CheckExporter.export(writer, format, from, to, urlId);
+        // Дописываем окончание gzip-потока; сам ответ закроет сервер
+        if (out instanceof GZIPOutputStream gzipOut) {
+            gzipOut.finish();
+        }
+    }
+
+    private static LocalDateTime parseDate(String value) {
+        return value == null || value.isBlank() ? null : LocalDate.parse(value).atStartOfDay();
+    }
+}
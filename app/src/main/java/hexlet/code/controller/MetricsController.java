@@ -0,0 +1,12 @@
+package hexlet.code.controller;
+
+import hexlet.code.metrics.Metrics;
+import io.javalin.http.Context;
+
+public class MetricsController {
+
+    public static void index(Context ctx) {
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(Metrics.scrape());
+    }
+}
@@ -1,20 +1,17 @@
 package hexlet.code.controller;
 
-import hexlet.code.model.UrlCheck;
-import hexlet.code.repository.UrlCheckRepository;
 import hexlet.code.repository.UrlRepository;
+import hexlet.code.service.BulkChecker;
+import hexlet.code.service.CheckQueue;
 import io.javalin.http.Context;
 import io.javalin.http.NotFoundResponse;
-import kong.unirest.Unirest;
-import kong.unirest.UnirestException;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 
 import java.sql.SQLException;
-import java.time.LocalDateTime;
-import java.util.Objects;
 
 public class UrlCheckController {
+    public static CheckQueue checkQueue;
+    public static BulkChecker bulkChecker;
+
     public static void create(Context ctx) throws SQLException {
         var id = ctx.pathParamAsClass("id", Long.class).get();
 
@@ -22,45 +19,28 @@ public class UrlCheckController {
         var url = UrlRepository.findById(id)
                 .orElseThrow(() -> new NotFoundResponse("Url not found"));
 
-        try {
-            System.out.println("Checking URL: " + url.getName());
-            // Выполняем HTTP-запрос
-            var response = Unirest.get(url.getName()).asString();
-
-            // Парсим HTML
-            Document doc = Jsoup.parse(response.getBody());
-
-            // Извлекаем данные
-            String title = doc.title();
-            String h1 = doc.selectFirst("h1") != null ? Objects.requireNonNull(doc.selectFirst("h1")).text() : "";
-            String description = doc.selectFirst("meta[name=description]") != null
-                    ? Objects.requireNonNull(doc.selectFirst("meta[name=description]")).attr("content")
-                    : "";
-
-            System.out.println("Extracted data - Title: " + title + ", H1: " + h1 + ", Description: " + description);
-
-            // Создаем проверку
-            var urlCheck = new UrlCheck();
-            urlCheck.setStatusCode(response.getStatus());
-            urlCheck.setTitle(title);
-            urlCheck.setH1(h1);
-            urlCheck.setDescription(description);
-            urlCheck.setUrlId(id);
-            urlCheck.setCreatedAt(LocalDateTime.now());
-
-            // Сохраняем проверку
-            UrlCheckRepository.save(urlCheck);
-
-            // Устанавливаем flash-сообщение
-            ctx.sessionAttribute("flash", "Страница успешно проверена");
-            ctx.sessionAttribute("flashType", "success");
-
-        } catch (UnirestException e) {
-            // Устанавливаем сообщение об ошибке
-            ctx.sessionAttribute("flash", "Невозможно проверить страницу: " + e.getMessage());
+        // Ставим проверку в очередь, сама проверка выполняется воркерами
+        if (checkQueue.submit(url.getId())) {
+            ctx.sessionAttribute("flash", "Проверка поставлена в очередь");
+            ctx.sessionAttribute("flashType", "info");
+        } else {
+            ctx.sessionAttribute("flash", "Очередь проверок переполнена, попробуйте позже");
             ctx.sessionAttribute("flashType", "danger");
         }
 
         ctx.redirect("/urls/" + id);
     }
+
+    public static void createAll(Context ctx) {
+        // Запускаем проверку всех сайтов в фоне
+        if (bulkChecker.start()) {
+            ctx.sessionAttribute("flash", "Проверка всех сайтов запущена");
+            ctx.sessionAttribute("flashType", "info");
+        } else {
+            ctx.sessionAttribute("flash", "Проверка всех сайтов уже выполняется");
+            ctx.sessionAttribute("flashType", "warning");
+        }
+
+        ctx.redirect("/urls");
+    }
 }
@@ -1,41 +1,98 @@
 package hexlet.code.controller;
 
+import gg.jte.TemplateEngine;
+import gg.jte.output.Utf8ByteOutput;
 import hexlet.code.dto.UrlPage;
 import hexlet.code.dto.UrlsPage;
 import hexlet.code.model.Url;
-import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.BaseRepository;
+import hexlet.code.repository.PageRequest;
+import hexlet.code.repository.UrlCheckDailyRepository;
 import hexlet.code.repository.UrlCheckRepository;
 import hexlet.code.repository.UrlRepository;
+import hexlet.code.search.UrlSearchIndex;
+import hexlet.code.service.BulkChecker;
+import hexlet.code.service.CheckQueue;
+import hexlet.code.service.HostCircuitBreaker;
+import hexlet.code.service.PageFetcher;
+import hexlet.code.service.UrlImporter;
 import hexlet.code.utils.FlashUtil;
+import hexlet.code.utils.PageCache;
+import hexlet.code.utils.UrlNormalizer;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
 import io.javalin.http.NotFoundResponse;
-import io.javalin.validation.ValidationException;
 
-import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
-import java.util.List;
+import java.util.Arrays;
 
 import static io.javalin.rendering.template.TemplateUtil.model;
 
 public class UrlsController {
+    private static final int PAGE_SIZE = 25;
+    private static final int DAILY_HISTORY_DAYS = 90;
+    private static final int SEARCH_LIMIT = 50;
+    private static final String URLS_GROUP = "urls";
+
+    public static PageCache pageCache;
+    public static TemplateEngine templateEngine;
+    public static UrlSearchIndex searchIndex;
+    public static UrlImporter urlImporter;
+    public static HostCircuitBreaker circuitBreaker;
+
     public static void index(Context ctx) throws SQLException {
-        List<Url> urls = UrlRepository.findAll();
-        UrlsPage page = new UrlsPage();
-        page.setUrls(urls);
+        var after = ctx.queryParam("after");
+        var before = ctx.queryParam("before");
+        var query = ctx.queryParam("q");
+        var progress = UrlCheckController.bulkChecker.getProgress();
+
+        // Результаты поиска не кэшируем: запросов много разных, а ответ индекса и так быстрый
+        if (query != null && !query.isBlank()) {
+            ctx.result(render("urls/index.jte", searchPage(ctx, query.trim(), progress)));
+            return;
+        }
 
-        // Загружаем последние проверки для каждого URL
-        for (var url : urls) {
-            var latestCheck = UrlCheckRepository.findLatestCheck(url.getId());
-            latestCheck.ifPresent(check -> page.getLatestChecks().put(url.getId(), check));
+        // Flash-сообщения и идущая проверка всех сайтов делают страницу одноразовой
+        if (hasFlash(ctx) || progress.isRunning()) {
+            ctx.result(render("urls/index.jte", indexPage(ctx, after, before, progress)));
+            return;
         }
 
+        var variant = after + "|" + before + "|" + progress.getFinishedAt();
+        send(ctx, pageCache.get(URLS_GROUP, variant,
+                () -> render("urls/index.jte", indexPage(ctx, after, before, progress))));
+    }
+
+    private static UrlsPage indexPage(Context ctx, String after, String before, BulkChecker.Progress progress)
+            throws SQLException {
+        // Загружаем страницу сайтов вместе с последними проверками одним запросом
+        var request = PageRequest.of(after, before, PAGE_SIZE);
+        var urls = UrlRepository.findPageWithLatestChecks(request);
+        UrlsPage page = new UrlsPage();
+        page.setUrls(urls.getItems());
+        page.setNextCursor(urls.getNextCursor());
+        page.setPrevCursor(urls.getPrevCursor());
+        page.setBulkProgress(progress);
+
         // Добавляем flash-сообщения из сессии
         FlashUtil.setFlashToPage(ctx, page);
+        return page;
+    }
 
-        ctx.render("urls/index.jte", model("page", page));
+    private static UrlsPage searchPage(Context ctx, String query, BulkChecker.Progress progress)
+            throws SQLException {
+        var ids = searchIndex.search(query, SEARCH_LIMIT);
+        UrlsPage page = new UrlsPage();
+        page.setUrls(UrlRepository.findAllWithLatestChecks(ids));
+        page.setQuery(query);
+        page.setBulkProgress(progress);
+
+        FlashUtil.setFlashToPage(ctx, page);
+        return page;
     }
 
     public static void create(Context ctx) throws SQLException {
@@ -47,54 +104,172 @@ public class UrlsController {
             return;
         }
 
+        // Парсим URL и нормализуем
+        var normalizedUrl = UrlNormalizer.normalize(inputUrl).orElse(null);
+        if (normalizedUrl == null) {
+            ctx.sessionAttribute("flash", "Некорректный URL");
+            ctx.sessionAttribute("flashType", "danger");
+            ctx.redirect("/");
+            return;
+        }
+
+        // Проверяем существование URL
+        if (UrlRepository.existsByName(normalizedUrl)) {
+            ctx.sessionAttribute("flash", "Страница уже существует");
+            ctx.sessionAttribute("flashType", "info");
+            ctx.redirect("/urls");
+            return;
+        }
+
+        // Сохраняем новый URL; если его успел добавить параллельный запрос, сработает уникальный индекс
         try {
-            // Парсим URL и нормализуем
-            URI uri = new URI(inputUrl.trim());
-            URL url = uri.toURL();
-            String normalizedUrl = url.getProtocol() + "://" + url.getHost();
-
-            // Добавляем порт, если он указан и не стандартный
-            if (url.getPort() != -1
-                    && !((url.getProtocol().equals("http") && url.getPort() == 80)
-                    || (url.getProtocol().equals("https") && url.getPort() == 443))) {
-                normalizedUrl += ":" + url.getPort();
+            UrlRepository.save(new Url(normalizedUrl));
+        } catch (SQLException e) {
+            if (!BaseRepository.isUniqueViolation(e)) {
+                throw e;
             }
+            ctx.sessionAttribute("flash", "Страница уже существует");
+            ctx.sessionAttribute("flashType", "info");
+            ctx.redirect("/urls");
+            return;
+        }
 
-            // Проверяем существование URL
-            if (UrlRepository.existsByName(normalizedUrl)) {
-                ctx.sessionAttribute("flash", "Страница уже существует");
-                ctx.sessionAttribute("flashType", "info");
+        ctx.sessionAttribute("flash", "Страница успешно добавлена");
+        ctx.sessionAttribute("flashType", "success");
+        ctx.redirect("/urls");
+    }
+
+    /**
+     * Adds URLs from an uploaded file (multipart field "file") or from the raw
+     * request body, one URL per line or in the first CSV column.
+     */
+    public static void importUrls(Context ctx) throws IOException, SQLException {
+        UrlImporter.Result result;
+        if (ctx.isMultipartFormData()) {
+            var file = ctx.uploadedFile("file");
+            if (file == null) {
+                ctx.sessionAttribute("flash", "Файл для импорта не выбран");
+                ctx.sessionAttribute("flashType", "danger");
                 ctx.redirect("/urls");
                 return;
             }
+            try (var content = file.content()) {
+                result = urlImporter.importFrom(content);
+            }
+        } else {
+            result = urlImporter.importFrom(ctx.bodyInputStream());
+        }
 
-            // Сохраняем новый URL
-            Url newUrl = new Url(normalizedUrl);
-            UrlRepository.save(newUrl);
+        ctx.sessionAttribute("flash", "Импорт завершен: добавлено " + result.getAdded()
+                + ", уже были в списке " + result.getDuplicates() + ", некорректных строк " + result.getInvalid());
+        ctx.sessionAttribute("flashType", "success");
+        ctx.redirect("/urls");
+    }
 
-            ctx.sessionAttribute("flash", "Страница успешно добавлена");
-            ctx.sessionAttribute("flashType", "success");
-            ctx.redirect("/urls");
+    public static void show(Context ctx) throws SQLException {
+        Long id = ctx.pathParamAsClass("id", Long.class).get();
+        var after = ctx.queryParam("after");
+        var before = ctx.queryParam("before");
+        var checkState = UrlCheckController.checkQueue.getState(id).orElse(null);
 
-        } catch (MalformedURLException | ValidationException | IllegalArgumentException | URISyntaxException e) {
-            ctx.sessionAttribute("flash", "Некорректный URL");
-            ctx.sessionAttribute("flashType", "danger");
-            ctx.redirect("/");
+        if (hasFlash(ctx) || checkState != null && checkState.isActive()) {
+            ctx.result(render("urls/show.jte", showPage(ctx, id, after, before, checkState)));
+            return;
         }
+
+        var variant = after + "|" + before + "|"
+                + (checkState != null ? checkState.getStatus() + ":" + checkState.getError() : null) + "|"
+                + circuitVariant(id);
+        send(ctx, pageCache.get(urlGroup(id), variant,
+                () -> render("urls/show.jte", showPage(ctx, id, after, before, checkState))));
     }
 
-    public static void show(Context ctx) throws SQLException {
-        Long id = ctx.pathParamAsClass("id", Long.class).get();
+    private static UrlPage showPage(Context ctx, Long id, String after, String before, CheckQueue.CheckState checkState)
+            throws SQLException {
         var url = UrlRepository.findById(id)
                 .orElseThrow(() -> new NotFoundResponse("Entity with id = " + id + " not found"));
-        List<UrlCheck> checks = UrlCheckRepository.findByUrlId(id);
+        var request = PageRequest.of(after, before, PAGE_SIZE);
+        var checks = UrlCheckRepository.findPageByUrlId(id, request);
 
         var page = new UrlPage();
         page.setUrl(url);
-        page.setChecks(checks);
+        page.setChecks(checks.getItems());
+        // Старые проверки хранятся свернутыми по дням
+        page.setDailyChecks(UrlCheckDailyRepository.findByUrlId(id, DAILY_HISTORY_DAYS));
+        page.setNextCursor(checks.getNextCursor());
+        page.setPrevCursor(checks.getPrevCursor());
+        page.setCheckState(checkState);
+        page.setCircuit(circuitBreaker.stateOf(PageFetcher.hostOf(url.getName())));
 
         FlashUtil.setFlashToPage(ctx, page);
+        return page;
+    }
 
-        ctx.render("urls/show.jte", model("page", page));
+    /**
+     * Drops cached pages that show the URL: the list of all URLs and the URL's own page.
+     */
+    public static void invalidatePages(long urlId) {
+        pageCache.invalidate(URLS_GROUP);
+        pageCache.invalidate(urlGroup(urlId));
+    }
+
+    // Статический текст шаблонов уже закодирован в UTF-8, поэтому пишем в байты, а не в строку
+    private static byte[] render(String template, Object page) {
+        var output = new Utf8ByteOutput();
+        templateEngine.render(template, model("page", page), output);
+        var bytes = new ByteArrayOutputStream(output.getContentLength());
+        try {
+            output.writeTo(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Состояние цепи хоста меняется без записи в БД, поэтому входит в ключ кэша страницы
+    private static String circuitVariant(long urlId) throws SQLException {
+        var url = UrlRepository.findById(urlId).orElse(null);
+        if (url == null) {
+            return "";
+        }
+        var circuit = circuitBreaker.stateOf(PageFetcher.hostOf(url.getName()));
+        return circuit.getState() + ":" + circuit.getFailures() + ":" + circuit.getOpenUntil();
+    }
+
+    private static String urlGroup(long urlId) {
+        return "url:" + urlId;
+    }
+
+    private static boolean hasFlash(Context ctx) {
+        return ctx.sessionAttribute("flash") != null;
+    }
+
+    // Отдаем закэшированную страницу: заранее сжатую версию, если клиент ее примет, или 304,
+    // если ETag именно этой версии у клиента уже есть
+    private static void send(Context ctx, PageCache.Page page) {
+        var acceptEncoding = ctx.header(Header.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        var etag = gzip ? page.getGzippedEtag() : page.getEtag();
+
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, "no-cache");
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+
+        var ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        // If-None-Match сравнивается слабо: прокси, пересжимающий ответ, мог пометить тег как W/
+        if (ifNoneMatch != null && Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals(etag) || tag.equals("*"))) {
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            return;
+        }
+
+        if (gzip) {
+            ctx.header(Header.CONTENT_ENCODING, "gzip");
+            ctx.result(page.getGzipped());
+        } else {
+            ctx.result(page.getBody());
+        }
     }
 }
@@ -2,6 +2,9 @@ package hexlet.code.dto;
 
 import hexlet.code.model.Url;
 import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlCheckDaily;
+import hexlet.code.service.CheckQueue;
+import hexlet.code.service.HostCircuitBreaker;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -14,4 +17,9 @@ import java.util.List;
 public final class UrlPage extends BasePage {
     private Url url;
     private List<UrlCheck> checks;
+    private List<UrlCheckDaily> dailyChecks;
+    private String nextCursor;
+    private String prevCursor;
+    private CheckQueue.CheckState checkState;
+    private HostCircuitBreaker.Circuit circuit;
 }
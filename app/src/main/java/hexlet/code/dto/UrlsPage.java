@@ -1,19 +1,20 @@
 package hexlet.code.dto;
 
 import hexlet.code.model.Url;
-import hexlet.code.model.UrlCheck;
+import hexlet.code.service.BulkChecker;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 @Getter
 @Setter
 @Accessors(chain = true)
 public final class UrlsPage extends BasePage {
     private List<Url> urls;
-    private Map<Long, UrlCheck> latestChecks = new HashMap<>();
+    private String nextCursor;
+    private String prevCursor;
+    private String query;
+    private BulkChecker.Progress bulkProgress;
 }
@@ -0,0 +1,27 @@
+package hexlet.code.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Counter implements Metrics.Metric {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        Metrics.writeSample(out, name, labels, value.sum());
+    }
+}
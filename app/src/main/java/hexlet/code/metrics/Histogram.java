@@ -0,0 +1,83 @@
+package hexlet.code.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed buckets, in seconds unless registered with custom bounds;
+ * every bucket is its own {@link LongAdder}, so concurrent observations do not contend.
+ * The count is not kept separately but added up from the buckets, so a scrape
+ * taken during observations still has a {@code +Inf} bucket equal to the count.
+ */
+public final class Histogram implements Metrics.Metric {
+    private final double[] bounds;
+    // Последняя корзина для значений больше всех границ
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(double[] bounds) {
+        this.bounds = bounds;
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double seconds) {
+        int bucket = 0;
+        while (bucket < bounds.length && seconds > bounds[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sum.add(seconds);
+    }
+
+    public void observeNanos(long nanos) {
+        observe(nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Starts a timer that records the elapsed time when closed, for use in try-with-resources.
+     */
+    public Timer startTimer() {
+        return new Timer(this, System.nanoTime());
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (var bucket : buckets) {
+            total += bucket.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            Metrics.writeSample(out, name + "_bucket", Metrics.withLabel(labels, "le", Double.toString(bounds[i])),
+                    cumulative);
+        }
+        cumulative += buckets[bounds.length].sum();
+        Metrics.writeSample(out, name + "_bucket", Metrics.withLabel(labels, "le", "+Inf"), cumulative);
+        Metrics.writeSample(out, name + "_sum", labels, sum.sum());
+        Metrics.writeSample(out, name + "_count", labels, cumulative);
+    }
+
+    public static final class Timer implements AutoCloseable {
+        private final Histogram histogram;
+        private final long startedAt;
+
+        private Timer(Histogram histogram, long startedAt) {
+            this.histogram = histogram;
+            this.startedAt = startedAt;
+        }
+
+        @Override
+        public void close() {
+            histogram.observeNanos(System.nanoTime() - startedAt);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package hexlet.code.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * In-process metric registry rendered in the Prometheus text exposition format.
+ * Metrics are identified by name plus label pairs ({@code "route", "/urls", ...});
+ * lookups of existing series are lock-free and updates go to striped adders,
+ * so recording never contends on a shared lock.
+ */
+public final class Metrics {
+    static final double[] DEFAULT_BUCKETS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    interface Metric {
+        void write(StringBuilder out, String name, String labels);
+    }
+
+    private static final class Family {
+        private final String type;
+        private final String help;
+        private final Map<List<String>, Metric> series = new ConcurrentHashMap<>();
+
+        Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) series(name, "counter", help, labels, key -> new Counter());
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return histogram(name, help, DEFAULT_BUCKETS, labels);
+    }
+
+    /**
+     * Histogram with custom bucket bounds, for values other than latencies in seconds.
+     */
+    public static Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram) series(name, "histogram", help, labels, key -> new Histogram(buckets));
+    }
+
+    /**
+     * Registers a gauge read at scrape time; registering the same series again replaces the supplier.
+     */
+    public static void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        register(name, "gauge", help, supplier, labels);
+    }
+
+    /**
+     * Registers a counter whose total is kept elsewhere (for example a cache's hit count)
+     * and read at scrape time; the supplier must never decrease except on a reset.
+     */
+    public static void counter(String name, String help, DoubleSupplier supplier, String... labels) {
+        register(name, "counter", help, supplier, labels);
+    }
+
+    public static String scrape() {
+        var out = new StringBuilder(4096);
+        new TreeMap<>(FAMILIES).forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            family.series.forEach((labels, metric) -> metric.write(out, name, formatLabels(labels)));
+        });
+        return out.toString();
+    }
+
+    private static void register(String name, String type, String help, DoubleSupplier supplier, String[] labels) {
+        var family = FAMILIES.computeIfAbsent(name, key -> new Family(type, help));
+        family.series.put(List.of(labels), (out, metricName, labelText) -> writeSample(out, metricName, labelText,
+                supplier.getAsDouble()));
+    }
+
+    private static Metric series(String name, String type, String help, String[] labels,
+                                 Function<List<String>, Metric> factory) {
+        var family = FAMILIES.get(name);
+        if (family == null) {
+            family = FAMILIES.computeIfAbsent(name, key -> new Family(type, help));
+        }
+        var key = List.of(labels);
+        var metric = family.series.get(key);
+        return metric != null ? metric : family.series.computeIfAbsent(key, factory);
+    }
+
+    static String formatLabels(List<String> labels) {
+        if (labels.isEmpty()) {
+            return "";
+        }
+        var out = new StringBuilder("{");
+        for (int i = 0; i + 1 < labels.size(); i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels.get(i)).append("=\"").append(escape(labels.get(i + 1))).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    /**
+     * Appends one extra label (such as a histogram's {@code le}) to an already formatted label set.
+     */
+    static String withLabel(String labels, String name, String value) {
+        var label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    static void writeSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,111 @@
+package hexlet.code.metrics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Watches for virtual threads that block while pinned to their carrier thread,
+ * for example inside a synchronized block or a native call. Pinned blocking holds
+ * a carrier for its whole duration, so a few of them can stall every virtual thread.
+ * Events come from JFR ({@code jdk.VirtualThreadPinned}) in-process; each one is
+ * counted, and the first occurrence of every distinct stack is logged.
+ */
+@Slf4j
+public final class PinningMonitor implements AutoCloseable {
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_LOGGED_STACKS = 100;
+    private static final int MAX_FRAMES = 12;
+
+    private static final Counter PINNED = Metrics.counter("virtual_thread_pinned_total",
+            "Times a virtual thread blocked while pinned to its carrier");
+    private static final Histogram PINNED_DURATION = Metrics.histogram("virtual_thread_pinned_duration_seconds",
+            "How long virtual threads stayed blocked while pinned");
+
+    private final Duration threshold;
+    private final AtomicLong events = new AtomicLong();
+    private final Set<String> loggedStacks = ConcurrentHashMap.newKeySet();
+    // Не synchronized: закрытие потока событий ждет его поток, а ожидание под монитором само пинит
+    private final ReentrantLock lock = new ReentrantLock();
+    private RecordingStream stream;
+
+    /**
+     * @param threshold pinned blocking shorter than this is not reported
+     */
+    public PinningMonitor(Duration threshold) {
+        this.threshold = threshold;
+    }
+
+    public void start() {
+        lock.lock();
+        try {
+            if (stream != null) {
+                return;
+            }
+            stream = new RecordingStream();
+            stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+            stream.onEvent(EVENT, this::onPinned);
+            stream.startAsync();
+            log.info("Reporting virtual threads pinned for longer than {} ms", threshold.toMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEvents() {
+        return events.get();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        events.incrementAndGet();
+        PINNED.increment();
+        PINNED_DURATION.observeNanos(event.getDuration().toNanos());
+
+        // Одно и то же место обычно пинится много раз: в лог попадает только первый случай
+        var stack = describe(event.getStackTrace());
+        if (loggedStacks.size() < MAX_LOGGED_STACKS && loggedStacks.add(stack)) {
+            var thread = event.getThread();
+            var name = thread == null ? "?"
+                    : thread.getJavaName().isEmpty() ? "#" + thread.getJavaThreadId() : thread.getJavaName();
+            log.warn("Virtual thread {} blocked while pinned for {} ms at:\n{}",
+                    name, event.getDuration().toMillis(), stack);
+        }
+    }
+
+    private static String describe(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "\t(no stack trace)";
+        }
+        var out = new StringBuilder();
+        var frames = stackTrace.getFrames();
+        for (int i = 0; i < Math.min(frames.size(), MAX_FRAMES); i++) {
+            var method = frames.get(i).getMethod();
+            out.append("\tat ").append(method.getType().getName()).append('.').append(method.getName())
+                    .append(':').append(frames.get(i).getLineNumber()).append('\n');
+        }
+        if (frames.size() > MAX_FRAMES || stackTrace.isTruncated()) {
+            out.append("\t...\n");
+        }
+        return out.toString();
+    }
+}
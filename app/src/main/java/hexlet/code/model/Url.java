@@ -14,6 +14,10 @@ public final class Url {
     private long id;
     private String name;
     private LocalDateTime createdAt;
+    private LocalDateTime nextCheckAt;
+    private Long checkIntervalSeconds;
+    @ToString.Exclude
+    private UrlCheck latestCheck;
 
     public Url(String name) {
         this.name = name;
@@ -14,6 +14,15 @@ public final class UrlCheck {
     private String title;
     private String h1;
     private String description;
+    private boolean truncated;
+    private String etag;
+    private String lastModified;
+    private String bodyHash;
+    // Время ответа, скачивания и разбора в миллисекундах; у проверок до замеров — null
+    private Integer ttfbMillis;
+    private Integer downloadMillis;
+    private Integer parseMillis;
+    private Integer responseBytes;
     private Long urlId;
     private LocalDateTime createdAt;
 
@@ -25,6 +34,20 @@ public final class UrlCheck {
         return createdAt.format(formatter);
     }
 
+    /**
+     * Time from sending the request to the end of the body, or null when not measured.
+     */
+    public Integer getResponseMillis() {
+        return ttfbMillis != null && downloadMillis != null ? ttfbMillis + downloadMillis : null;
+    }
+
+    public String getFormattedResponseSize() {
+        if (responseBytes == null) {
+            return "";
+        }
+        return responseBytes < 1024 ? responseBytes + " Б" : String.format("%.1f КБ", responseBytes / 1024.0);
+    }
+
     public UrlCheck() {
         this.createdAt = LocalDateTime.now();
     }
@@ -0,0 +1,56 @@
+package hexlet.code.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Checks of one URL on one day, rolled up once they left the retention window.
+ */
+@Setter
+@Getter
+public final class UrlCheckDaily {
+    private long urlId;
+    private LocalDate day;
+    private int checksCount;
+    private int status2xx;
+    private int status3xx;
+    private int status4xx;
+    private int status5xx;
+    private String firstTitle;
+    private String lastTitle;
+    private LocalDateTime firstCheckedAt;
+    private LocalDateTime lastCheckedAt;
+
+    public String getFormattedDay() {
+        if (day == null) {
+            return "";
+        }
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        return day.format(formatter);
+    }
+
+    /**
+     * Adds one raw check; checks must be added oldest first.
+     */
+    public void add(UrlCheck check) {
+        if (checksCount == 0) {
+            firstTitle = check.getTitle();
+            firstCheckedAt = check.getCreatedAt();
+        }
+        checksCount++;
+        switch (check.getStatusCode() / 100) {
+            case 2 -> status2xx++;
+            case 3 -> status3xx++;
+            case 4 -> status4xx++;
+            case 5 -> status5xx++;
+            default -> {
+            }
+        }
+        lastTitle = check.getTitle();
+        lastCheckedAt = check.getCreatedAt();
+    }
+}
@@ -1,14 +1,37 @@
 package hexlet.code.repository;
 
 import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.Metrics;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 
 public class BaseRepository {
     public static HikariDataSource dataSource;
+    // Узнает о сохранении сайтов и проверок: сбрасывает кэш страниц и обновляет поисковый индекс
+    public static volatile RepositoryListener listener = new RepositoryListener() { };
 
+    /**
+     * Connection of the unit of work bound to this thread, or a fresh pooled one
+     * when repositories are called outside of any request or job.
+     */
     public static Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        var unit = UnitOfWork.current();
+        return unit.isPresent() ? unit.get().connection() : dataSource.getConnection();
+    }
+
+    public static boolean isUniqueViolation(SQLException e) {
+        // 23505 - нарушение уникальности и в Postgres, и в H2; у пакетной вставки причина бывает в цепочке
+        for (var cause = e; cause != null; cause = cause.getNextException()) {
+            if ("23505".equals(cause.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Histogram queryTimer(String method) {
+        return Metrics.histogram("db_query_duration_seconds", "Time spent in repository methods", "method", method);
     }
 }
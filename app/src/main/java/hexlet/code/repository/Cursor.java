@@ -0,0 +1,49 @@
+package hexlet.code.repository;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Position in a listing ordered by (created_at DESC, id DESC).
+ * Encoded as an opaque URL-safe token so it can travel in query strings.
+ */
+@Getter
+public final class Cursor {
+    private static final String SEPARATOR = "_";
+
+    private final LocalDateTime createdAt;
+    private final long id;
+
+    public Cursor(LocalDateTime createdAt, long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public String encode() {
+        var raw = createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Optional<Cursor> decode(String token) {
+        if (token == null || token.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            var raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                return Optional.empty();
+            }
+            var createdAt = LocalDateTime.parse(raw.substring(0, separator));
+            var id = Long.parseLong(raw.substring(separator + 1));
+            return Optional.of(new Cursor(createdAt, id));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+}
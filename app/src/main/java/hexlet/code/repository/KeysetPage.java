@@ -0,0 +1,76 @@
+package hexlet.code.repository;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated listing together with the cursors
+ * pointing to the neighbouring pages (null when there is no such page).
+ */
+@Getter
+public final class KeysetPage<T> {
+    private final List<T> items;
+    private final String nextCursor;
+    private final String prevCursor;
+
+    private KeysetPage(List<T> items, String nextCursor, String prevCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.prevCursor = prevCursor;
+    }
+
+    /**
+     * Builds a page from rows fetched with {@code LIMIT limit + 1}.
+     * Backward pages are fetched in ascending order and are flipped here,
+     * so items are always returned newest first.
+     */
+    static <T> KeysetPage<T> of(List<T> rows, int limit, PageRequest request, Function<T, Cursor> cursorOf) {
+        boolean hasMore = rows.size() > limit;
+        List<T> items = hasMore ? new ArrayList<>(rows.subList(0, limit)) : rows;
+        if (request.isBackward()) {
+            Collections.reverse(items);
+        }
+        if (items.isEmpty()) {
+            return new KeysetPage<>(items, null, null);
+        }
+
+        var first = cursorOf.apply(items.getFirst()).encode();
+        var last = cursorOf.apply(items.getLast()).encode();
+        if (request.isBackward()) {
+            return new KeysetPage<>(items, last, hasMore ? first : null);
+        }
+        return new KeysetPage<>(items, hasMore ? last : null, request.getCursor() != null ? first : null);
+    }
+
+    /**
+     * Hands the rows of a forward page fetched with {@code LIMIT limit + 1} to the
+     * handler as they are read, and returns the cursor of the next page, or null
+     * when this page is the last one.
+     */
+    static <T> String stream(ResultSet resultSet, int limit, RowMapper<T> mapper, RowHandler<T> handler,
+                             Function<T, Cursor> cursorOf) throws SQLException, IOException {
+        T last = null;
+        int count = 0;
+        while (resultSet.next()) {
+            if (count == limit) {
+                return cursorOf.apply(last).encode();
+            }
+            last = mapper.map(resultSet);
+            handler.handle(last);
+            count++;
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+}
@@ -0,0 +1,207 @@
+package hexlet.code.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Applies the versioned scripts db/migration/V1.sql, V2.sql, ... in order and
+ * records each in schema_version with its checksum. Boot verifies that applied
+ * scripts were not edited afterwards; when the database is already current, that
+ * is the only query. Otherwise the node locks the schema_lock row with SELECT ...
+ * FOR UPDATE in a transaction kept open for the whole run, so of several nodes
+ * starting together only one migrates and the others wait and then find nothing
+ * left to do. The lock belongs to the transaction, so however long a script runs
+ * it is not taken away, and a crashed node releases it with its connection.
+ */
+@Slf4j
+public final class Migrations {
+    private static final String LOCATION = "db/migration/V%d.sql";
+    private static final Duration LOCK_WAIT = Duration.ofMinutes(30);
+    private static final Duration LOCK_RETRY = Duration.ofMillis(200);
+
+    private record Script(int version, String name, String sql, String checksum) {
+    }
+
+    private Migrations() {
+    }
+
+    public static void migrate(DataSource dataSource) throws SQLException, IOException {
+        var scripts = loadScripts();
+        int latest = scripts.size();
+
+        try (var connection = dataSource.getConnection()) {
+            if (verifyApplied(connection, scripts) >= latest) {
+                return;
+            }
+
+            try (var statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                        + "version INTEGER NOT NULL PRIMARY KEY, script VARCHAR(255) NOT NULL, "
+                        + "checksum VARCHAR(64) NOT NULL, applied_at TIMESTAMP NOT NULL)");
+                statement.execute("CREATE TABLE IF NOT EXISTS schema_lock ("
+                        + "id INTEGER NOT NULL PRIMARY KEY, locked_by VARCHAR(255), locked_at TIMESTAMP NOT NULL)");
+            }
+
+            // Блокировка держится отдельным соединением, чтобы коммиты скриптов ее не снимали
+            try (var lockConnection = dataSource.getConnection()) {
+                lock(lockConnection);
+                try {
+                    // Пока ждали блокировку, схему мог обновить другой узел
+                    int current = verifyApplied(connection, scripts);
+                    for (var script : scripts.subList(Math.min(current, latest), latest)) {
+                        apply(connection, script);
+                    }
+                } finally {
+                    lockConnection.rollback();
+                    lockConnection.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    private static List<Script> loadScripts() throws IOException {
+        var scripts = new ArrayList<Script>();
+        var classLoader = Migrations.class.getClassLoader();
+        for (int version = 1; ; version++) {
+            var name = LOCATION.formatted(version);
+            try (var stream = classLoader.getResourceAsStream(name)) {
+                if (stream == null) {
+                    return scripts;
+                }
+                var bytes = stream.readAllBytes();
+                scripts.add(new Script(version, name, new String(bytes, StandardCharsets.UTF_8), checksum(bytes)));
+            }
+        }
+    }
+
+    /**
+     * Checks the recorded checksums against the scripts on the classpath.
+     *
+     * @return highest applied version, 0 for a database without schema_version
+     */
+    private static int verifyApplied(Connection connection, List<Script> scripts) throws SQLException {
+        var applied = new TreeMap<Integer, String>();
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (resultSet.next()) {
+                applied.put(resultSet.getInt("version"), resultSet.getString("checksum"));
+            }
+        } catch (SQLException e) {
+            // Таблицы еще нет: база пустая или создана до появления миграций
+            return 0;
+        }
+
+        for (var entry : applied.entrySet()) {
+            // Версии новее кода бывают при откате или раскатке по узлам: их не проверяем
+            if (entry.getKey() > scripts.size()) {
+                continue;
+            }
+            var script = scripts.get(entry.getKey() - 1);
+            if (!script.checksum().equals(entry.getValue())) {
+                throw new SQLException("Migration " + script.name() + " was changed after it had been applied; "
+                        + "add a new script instead of editing an applied one");
+            }
+        }
+        return applied.isEmpty() ? 0 : applied.lastKey();
+    }
+
+    private static void apply(Connection connection, Script script) throws SQLException {
+        log.info("Applying migration {}", script.name());
+        long startedAt = System.nanoTime();
+        boolean autoCommit = connection.getAutoCommit();
+        // В Postgres DDL транзакционный и скрипт применяется целиком; H2 фиксирует каждый DDL сам
+        connection.setAutoCommit(false);
+        try (var statement = connection.createStatement();
+             var insert = connection.prepareStatement(
+                     "INSERT INTO schema_version (version, script, checksum, applied_at) VALUES (?, ?, ?, ?)")) {
+            statement.execute(script.sql());
+            insert.setInt(1, script.version());
+            insert.setString(2, script.name());
+            insert.setString(3, script.checksum());
+            insert.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            insert.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        log.info("Migration {} applied in {} ms", script.name(), (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    private static void lock(Connection connection) throws SQLException {
+        try (var insert = connection.prepareStatement(
+                "INSERT INTO schema_lock (id, locked_by, locked_at) VALUES (1, NULL, ?)")) {
+            insert.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            if (!BaseRepository.isUniqueViolation(e)) {
+                throw e;
+            }
+        }
+
+        connection.setAutoCommit(false);
+        long deadline = System.nanoTime() + LOCK_WAIT.toNanos();
+        while (true) {
+            try (var select = connection.prepareStatement("SELECT locked_by FROM schema_lock WHERE id = 1 FOR UPDATE");
+                 var update = connection.prepareStatement(
+                         "UPDATE schema_lock SET locked_by = ?, locked_at = ? WHERE id = 1")) {
+                select.executeQuery().close();
+                // Владелец и время видны только для диагностики; саму блокировку держит транзакция
+                update.setString(1, ManagementFactory.getRuntimeMXBean().getName());
+                update.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+                update.executeUpdate();
+                return;
+            } catch (SQLException e) {
+                connection.rollback();
+                if (!isLockTimeout(e)) {
+                    connection.setAutoCommit(true);
+                    throw e;
+                }
+            }
+
+            if (System.nanoTime() - deadline > 0) {
+                connection.setAutoCommit(true);
+                throw new SQLException("Timed out waiting for the schema migration lock");
+            }
+            log.info("Waiting for another node to finish schema migration");
+            try {
+                Thread.sleep(LOCK_RETRY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                connection.setAutoCommit(true);
+                throw new SQLException("Interrupted while waiting for the schema migration lock", e);
+            }
+        }
+    }
+
+    // H2 ждет строку не дольше LOCK_TIMEOUT; Postgres — только если задан lock_timeout
+    private static boolean isLockTimeout(SQLException e) {
+        var state = e.getSQLState();
+        return state != null && (state.startsWith("HYT") || state.equals("55P03") || state.equals("40001"));
+    }
+
+    private static String checksum(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
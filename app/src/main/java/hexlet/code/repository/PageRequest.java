@@ -0,0 +1,67 @@
+package hexlet.code.repository;
+
+import lombok.Getter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Keyset page request: rows strictly after the cursor (older) by default,
+ * or strictly before it (newer) when navigating backward.
+ */
+@Getter
+public final class PageRequest {
+    private final Cursor cursor;
+    private final boolean backward;
+    private final int limit;
+
+    private PageRequest(Cursor cursor, boolean backward, int limit) {
+        this.cursor = cursor;
+        this.backward = backward;
+        this.limit = limit;
+    }
+
+    public static PageRequest first(int limit) {
+        return new PageRequest(null, false, limit);
+    }
+
+    /**
+     * Builds a request from the "after"/"before" query parameters;
+     * malformed or missing tokens fall back to the first page.
+     */
+    public static PageRequest of(String after, String before, int limit) {
+        var beforeCursor = Cursor.decode(before);
+        if (beforeCursor.isPresent()) {
+            return new PageRequest(beforeCursor.get(), true, limit);
+        }
+        return new PageRequest(Cursor.decode(after).orElse(null), false, limit);
+    }
+
+    /**
+     * SQL predicate on the (created_at, id) key, or an always-true one for the first page.
+     */
+    String keysetCondition(String alias) {
+        if (cursor == null) {
+            return "1 = 1";
+        }
+        return "(" + alias + ".created_at, " + alias + ".id) " + (backward ? ">" : "<") + " (?, ?)";
+    }
+
+    /**
+     * Binds the cursor values for {@link #keysetCondition} and returns the next free parameter index.
+     */
+    int bindCursor(PreparedStatement statement, int index) throws SQLException {
+        if (cursor == null) {
+            return index;
+        }
+        statement.setTimestamp(index, Timestamp.valueOf(cursor.getCreatedAt()));
+        statement.setLong(index + 1, cursor.getId());
+        return index + 2;
+    }
+
+    String orderBy(String alias) {
+        var direction = backward ? "ASC" : "DESC";
+        return alias + ".created_at " + direction + ", " + alias + ".id " + direction;
+    }
+}
@@ -0,0 +1,19 @@
+package hexlet.code.repository;
+
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+
+/**
+ * Told about saved changes that cached pages and in-memory indexes are built from.
+ */
+public interface RepositoryListener {
+
+    default void urlSaved(Url url) {
+    }
+
+    default void checkSaved(UrlCheck check) {
+    }
+
+    default void checksRolledUp(long urlId) {
+    }
+}
@@ -0,0 +1,12 @@
+package hexlet.code.repository;
+
+import java.io.IOException;
+
+/**
+ * Receives rows one at a time while the result set is still open, so callers
+ * can write them out without collecting them into a list first.
+ */
+@FunctionalInterface
+public interface RowHandler<T> {
+    void handle(T row) throws IOException;
+}
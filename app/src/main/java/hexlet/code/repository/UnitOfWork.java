@@ -0,0 +1,145 @@
+package hexlet.code.repository;
+
+import hexlet.code.metrics.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Optional;
+
+/**
+ * Connection scope of one HTTP request or background job. While a unit is bound
+ * to the current thread, every repository call shares one lazily acquired
+ * connection, so a page that runs several queries holds a single pool slot and
+ * can read consistently inside {@link #inTransaction}.
+ */
+@Slf4j
+public final class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+    private static final double[] COUNT_BUCKETS = {0, 1, 2, 3, 5, 10, 25};
+
+    @FunctionalInterface
+    public interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    private final String scope;
+    private Connection connection;
+    private Connection shared;
+    private boolean inTransaction;
+    private int checkouts;
+    private int calls;
+
+    private UnitOfWork(String scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Binds a new unit to the current thread; {@code scope} labels its metrics ("http", "check", ...).
+     */
+    public static UnitOfWork begin(String scope) {
+        var stale = CURRENT.get();
+        if (stale != null) {
+            // Поток из пула мог остаться с незакрытой единицей работы после сбоя
+            log.warn("Unit of work '{}' was not closed, closing it before a new one", stale.scope);
+            stale.close();
+        }
+        var unit = new UnitOfWork(scope);
+        CURRENT.set(unit);
+        return unit;
+    }
+
+    public static Optional<UnitOfWork> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Runs {@code work} in a transaction on the current unit's connection. Nested calls
+     * join the outer transaction; without a bound unit a short-lived one is opened.
+     */
+    public static <T> T inTransaction(Work<T> work) throws SQLException {
+        var unit = CURRENT.get();
+        if (unit == null) {
+            try (var temporary = begin("transaction")) {
+                return temporary.transaction(work);
+            }
+        }
+        return unit.transaction(work);
+    }
+
+    /**
+     * Connection for a repository call. Closing it is a no-op; the physical
+     * connection goes back to the pool when the unit is closed.
+     */
+    Connection connection() throws SQLException {
+        calls++;
+        return acquire();
+    }
+
+    private Connection acquire() throws SQLException {
+        if (connection == null) {
+            connection = BaseRepository.dataSource.getConnection();
+            shared = nonClosing(connection);
+            checkouts++;
+        }
+        return shared;
+    }
+
+    private <T> T transaction(Work<T> work) throws SQLException {
+        if (inTransaction) {
+            return work.run();
+        }
+        var conn = acquire();
+        conn.setAutoCommit(false);
+        inTransaction = true;
+        try {
+            T result = work.run();
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            inTransaction = false;
+            conn.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Failed to return connection of unit of work '{}'", scope, e);
+            }
+            connection = null;
+            shared = null;
+        }
+        Metrics.histogram("db_connections_per_unit", "Pool checkouts per request or job",
+                COUNT_BUCKETS, "scope", scope).observe(checkouts);
+        Metrics.histogram("db_repository_calls_per_unit", "Repository calls per request or job",
+                COUNT_BUCKETS, "scope", scope).observe(calls);
+    }
+
+    private static Connection nonClosing(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,166 @@
+package hexlet.code.repository;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlCheckDaily;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UrlCheckDailyRepository {
+    private static final Histogram FIND_BY_URL_ID_TIMER =
+            BaseRepository.queryTimer("UrlCheckDailyRepository.findByUrlId");
+    private static final Histogram ROLL_UP_TIMER = BaseRepository.queryTimer("UrlCheckDailyRepository.rollUpBatch");
+
+    public static List<UrlCheckDaily> findByUrlId(Long urlId, int limit) throws SQLException {
+        String sql = "SELECT * FROM url_check_daily WHERE url_id = ? ORDER BY check_day DESC LIMIT ?";
+
+        try (var timer = FIND_BY_URL_ID_TIMER.startTimer();
+             var conn = BaseRepository.getConnection();
+             var stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, urlId);
+            stmt.setInt(2, limit);
+            var result = new ArrayList<UrlCheckDaily>();
+            try (var resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    result.add(extractDaily(resultSet));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Moves up to {@code batchSize} of the oldest checks created before {@code cutoff}
+     * into the daily rollup and deletes them, in one short transaction. The latest
+     * check of every URL is kept raw, since the list page and conditional re-checks
+     * rely on it. Selected rows are locked, so concurrent runs never count a check twice.
+     *
+     * @return number of checks rolled up; 0 when nothing is left before the cutoff
+     */
+    public static int rollUpBatch(LocalDateTime cutoff, int batchSize) throws SQLException {
+        String sql = "SELECT c.id, c.url_id, c.status_code, c.title, c.created_at FROM url_checks c "
+                + "WHERE c.created_at < ? AND c.id <> ("
+                + "SELECT lc.id FROM url_checks lc WHERE lc.url_id = c.url_id "
+                + "ORDER BY lc.created_at DESC, lc.id DESC LIMIT 1) "
+                + "ORDER BY c.created_at, c.id LIMIT ? FOR UPDATE";
+
+        var rolledUp = new LinkedHashMap<String, UrlCheckDaily>();
+        var ids = new ArrayList<Long>();
+        try (var timer = ROLL_UP_TIMER.startTimer()) {
+            UnitOfWork.inTransaction(() -> {
+                try (var conn = BaseRepository.getConnection()) {
+                    try (var stmt = conn.prepareStatement(sql)) {
+                        stmt.setTimestamp(1, Timestamp.valueOf(cutoff));
+                        stmt.setInt(2, batchSize);
+                        try (var resultSet = stmt.executeQuery()) {
+                            while (resultSet.next()) {
+                                var check = new UrlCheck();
+                                check.setId(resultSet.getLong("id"));
+                                check.setUrlId(resultSet.getLong("url_id"));
+                                check.setStatusCode(resultSet.getInt("status_code"));
+                                check.setTitle(resultSet.getString("title"));
+                                check.setCreatedAt(resultSet.getTimestamp("created_at").toLocalDateTime());
+                                ids.add(check.getId());
+                                addToDay(rolledUp, check);
+                            }
+                        }
+                    }
+                    for (var daily : rolledUp.values()) {
+                        merge(conn, daily);
+                    }
+                    deleteChecks(conn, ids);
+                }
+                return null;
+            });
+        }
+        rolledUp.values().stream().mapToLong(UrlCheckDaily::getUrlId).distinct()
+                .forEach(BaseRepository.listener::checksRolledUp);
+        return ids.size();
+    }
+
+    private static void addToDay(Map<String, UrlCheckDaily> days, UrlCheck check) {
+        var day = check.getCreatedAt().toLocalDate();
+        days.computeIfAbsent(check.getUrlId() + "/" + day, key -> {
+            var daily = new UrlCheckDaily();
+            daily.setUrlId(check.getUrlId());
+            daily.setDay(day);
+            return daily;
+        }).add(check);
+    }
+
+    // Строки берутся по возрастанию даты, поэтому пачка всегда новее уже свернутых данных за этот день
+    private static void merge(Connection conn, UrlCheckDaily daily) throws SQLException {
+        String update = "UPDATE url_check_daily SET checks_count = checks_count + ?, "
+                + "status_2xx = status_2xx + ?, status_3xx = status_3xx + ?, "
+                + "status_4xx = status_4xx + ?, status_5xx = status_5xx + ?, "
+                + "last_title = ?, last_checked_at = ? WHERE url_id = ? AND check_day = ?";
+        try (var stmt = conn.prepareStatement(update)) {
+            stmt.setInt(1, daily.getChecksCount());
+            stmt.setInt(2, daily.getStatus2xx());
+            stmt.setInt(3, daily.getStatus3xx());
+            stmt.setInt(4, daily.getStatus4xx());
+            stmt.setInt(5, daily.getStatus5xx());
+            stmt.setString(6, daily.getLastTitle());
+            stmt.setTimestamp(7, Timestamp.valueOf(daily.getLastCheckedAt()));
+            stmt.setLong(8, daily.getUrlId());
+            stmt.setDate(9, Date.valueOf(daily.getDay()));
+            if (stmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+
+        String insert = "INSERT INTO url_check_daily (url_id, check_day, checks_count, status_2xx, status_3xx, "
+                + "status_4xx, status_5xx, first_title, last_title, first_checked_at, last_checked_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (var stmt = conn.prepareStatement(insert)) {
+            stmt.setLong(1, daily.getUrlId());
+            stmt.setDate(2, Date.valueOf(daily.getDay()));
+            stmt.setInt(3, daily.getChecksCount());
+            stmt.setInt(4, daily.getStatus2xx());
+            stmt.setInt(5, daily.getStatus3xx());
+            stmt.setInt(6, daily.getStatus4xx());
+            stmt.setInt(7, daily.getStatus5xx());
+            stmt.setString(8, daily.getFirstTitle());
+            stmt.setString(9, daily.getLastTitle());
+            stmt.setTimestamp(10, Timestamp.valueOf(daily.getFirstCheckedAt()));
+            stmt.setTimestamp(11, Timestamp.valueOf(daily.getLastCheckedAt()));
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void deleteChecks(Connection conn, List<Long> ids) throws SQLException {
+        try (var stmt = conn.prepareStatement("DELETE FROM url_checks WHERE id = ?")) {
+            for (var id : ids) {
+                stmt.setLong(1, id);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static UrlCheckDaily extractDaily(ResultSet resultSet) throws SQLException {
+        var daily = new UrlCheckDaily();
+        daily.setUrlId(resultSet.getLong("url_id"));
+        daily.setDay(resultSet.getDate("check_day").toLocalDate());
+        daily.setChecksCount(resultSet.getInt("checks_count"));
+        daily.setStatus2xx(resultSet.getInt("status_2xx"));
+        daily.setStatus3xx(resultSet.getInt("status_3xx"));
+        daily.setStatus4xx(resultSet.getInt("status_4xx"));
+        daily.setStatus5xx(resultSet.getInt("status_5xx"));
+        daily.setFirstTitle(resultSet.getString("first_title"));
+        daily.setLastTitle(resultSet.getString("last_title"));
+        daily.setFirstCheckedAt(resultSet.getTimestamp("first_checked_at").toLocalDateTime());
+        daily.setLastCheckedAt(resultSet.getTimestamp("last_checked_at").toLocalDateTime());
+        return daily;
+    }
+}
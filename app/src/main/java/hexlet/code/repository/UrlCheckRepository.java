@@ -1,12 +1,18 @@
 package hexlet.code.repository;
 
+import hexlet.code.metrics.Histogram;
 import hexlet.code.model.UrlCheck;
 import lombok.extern.slf4j.Slf4j;
 
-
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -14,37 +20,76 @@ import java.util.Optional;
 
 @Slf4j
 public class UrlCheckRepository {
-    public static void save(UrlCheck urlCheck) throws SQLException {
-        String sql = "INSERT INTO url_checks (status_code, title, h1, description, url_id, created_at) "
-                + "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final Histogram SAVE_TIMER = BaseRepository.queryTimer("UrlCheckRepository.save");
+    private static final Histogram SAVE_ALL_TIMER = BaseRepository.queryTimer("UrlCheckRepository.saveAll");
+    private static final Histogram FIND_BY_URL_ID_TIMER = BaseRepository.queryTimer("UrlCheckRepository.findByUrlId");
+    private static final Histogram FIND_PAGE_TIMER = BaseRepository.queryTimer("UrlCheckRepository.findPageByUrlId");
+    private static final Histogram FIND_LATEST_TIMER = BaseRepository.queryTimer("UrlCheckRepository.findLatestCheck");
+    private static final Histogram FIND_BY_ID_TIMER = BaseRepository.queryTimer("UrlCheckRepository.findById");
+    private static final Histogram STREAM_ALL_TIMER = BaseRepository.queryTimer("UrlCheckRepository.streamAll");
+    private static final int STREAM_FETCH_SIZE = 1_000;
 
-        try (var conn = BaseRepository.dataSource.getConnection();
-             var stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+    private static final String INSERT_SQL =
+            "INSERT INTO url_checks (status_code, title, h1, description, truncated, etag, last_modified, body_hash, "
+            + "ttfb_ms, download_ms, parse_ms, response_bytes, url_id, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-            stmt.setInt(1, urlCheck.getStatusCode());
-            stmt.setString(2, urlCheck.getTitle());
-            stmt.setString(3, urlCheck.getH1());
-            stmt.setString(4, urlCheck.getDescription());
-            stmt.setLong(5, urlCheck.getUrlId());
-            stmt.setTimestamp(6, Timestamp.valueOf(urlCheck.getCreatedAt()));
+    public static void save(UrlCheck urlCheck) throws SQLException {
+        try (var timer = SAVE_TIMER.startTimer();
+             var conn = BaseRepository.getConnection();
+             var stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
 
-            int affectedRows = stmt.executeUpdate();
-            System.out.println("Affected rows: " + affectedRows);
+            bindInsert(stmt, urlCheck);
+            stmt.executeUpdate();
 
             var generatedKeys = stmt.getGeneratedKeys();
             if (generatedKeys.next()) {
                 urlCheck.setId(generatedKeys.getLong(1));
-                System.out.println("Saved UrlCheck with id: " + urlCheck.getId());
+                log.debug("Saved UrlCheck with id: {}", urlCheck.getId());
+                BaseRepository.listener.checkSaved(urlCheck);
             } else {
                 throw new SQLException("DB have not returned an id after saving an entity");
             }
         }
     }
 
+    /**
+     * Inserts all checks with a single JDBC batch in one transaction and assigns their ids.
+     */
+    public static void saveAll(List<UrlCheck> urlChecks) throws SQLException {
+        if (urlChecks.isEmpty()) {
+            return;
+        }
+
+        try (var timer = SAVE_ALL_TIMER.startTimer()) {
+            UnitOfWork.inTransaction(() -> {
+                try (var conn = BaseRepository.getConnection();
+                     var stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    for (var urlCheck : urlChecks) {
+                        bindInsert(stmt, urlCheck);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+
+                    var generatedKeys = stmt.getGeneratedKeys();
+                    for (var urlCheck : urlChecks) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("DB have not returned ids for all saved entities");
+                        }
+                        urlCheck.setId(generatedKeys.getLong(1));
+                    }
+                }
+                return null;
+            });
+        }
+        urlChecks.forEach(BaseRepository.listener::checkSaved);
+    }
+
     public static List<UrlCheck> findByUrlId(Long urlId) throws SQLException {
         String sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY created_at DESC";
 
-        try (var conn = BaseRepository.dataSource.getConnection();
+        try (var timer = FIND_BY_URL_ID_TIMER.startTimer();
+             var conn = BaseRepository.getConnection();
              var stmt = conn.prepareStatement(sql)) {
 
             stmt.setLong(1, urlId);
@@ -52,55 +97,140 @@ public class UrlCheckRepository {
 
             var result = new ArrayList<UrlCheck>();
             while (resultSet.next()) {
-                long id = resultSet.getLong("id");
-                int statusCode = resultSet.getInt("status_code");
-                String title = resultSet.getString("title");
-                String h1 = resultSet.getString("h1");
-                String description = resultSet.getString("description");
-                LocalDateTime createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
-
-                UrlCheck urlCheck = new UrlCheck();
-                urlCheck.setId(id);
-                urlCheck.setStatusCode(statusCode);
-                urlCheck.setTitle(title);
-                urlCheck.setH1(h1);
-                urlCheck.setDescription(description);
-                urlCheck.setUrlId(urlId);
-                urlCheck.setCreatedAt(createdAt);
-
-                result.add(urlCheck);
+                result.add(extractUrlCheck(resultSet));
             }
             return result;
         }
     }
 
+    /**
+     * Loads one keyset page of a URL's checks, newest first.
+     */
+    public static KeysetPage<UrlCheck> findPageByUrlId(Long urlId, PageRequest request) throws SQLException {
+        var rows = new ArrayList<UrlCheck>();
+
+        try (var timer = FIND_PAGE_TIMER.startTimer();
+             var conn = BaseRepository.getConnection();
+             var stmt = preparePageByUrlId(conn, urlId, request);
+             var resultSet = stmt.executeQuery()) {
+
+            while (resultSet.next()) {
+                rows.add(extractUrlCheck(resultSet));
+            }
+        }
+        return KeysetPage.of(rows, request.getLimit(), request,
+                check -> new Cursor(check.getCreatedAt(), check.getId()));
+    }
+
+    /**
+     * Same page as {@link #findPageByUrlId}, handed to {@code handler} row by row while
+     * it is read. Only forward pages are supported.
+     *
+     * @return cursor of the next page, or null when this is the last one
+     */
+    public static String streamPageByUrlId(Long urlId, PageRequest request, RowHandler<UrlCheck> handler)
+            throws SQLException, IOException {
+        if (request.isBackward()) {
+            throw new IllegalArgumentException("Only forward pages can be streamed");
+        }
+
+        try (var timer = FIND_PAGE_TIMER.startTimer();
+             var conn = BaseRepository.getConnection();
+             var stmt = preparePageByUrlId(conn, urlId, request);
+             var resultSet = stmt.executeQuery()) {
+
+            return KeysetPage.stream(resultSet, request.getLimit(), UrlCheckRepository::extractUrlCheck, handler,
+                    check -> new Cursor(check.getCreatedAt(), check.getId()));
+        }
+    }
+
+    private static PreparedStatement preparePageByUrlId(Connection conn, Long urlId, PageRequest request)
+            throws SQLException {
+        String sql = "SELECT * FROM url_checks c WHERE c.url_id = ? AND " + request.keysetCondition("c")
+                + " ORDER BY " + request.orderBy("c") + " LIMIT ?";
+        var stmt = conn.prepareStatement(sql);
+        try {
+            stmt.setLong(1, urlId);
+            int index = request.bindCursor(stmt, 2);
+            stmt.setInt(index, request.getLimit() + 1);
+            return stmt;
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Hands every check created in [{@code from}, {@code to}) to {@code handler}, oldest
+     * first, optionally only those of one URL; null bounds are open. Rows come from a
+     * forward-only cursor fetched {@value #STREAM_FETCH_SIZE} at a time, so memory use
+     * does not depend on how many rows match. The read runs in a transaction because
+     * the Postgres driver only fetches in chunks with autocommit off.
+     *
+     * @return number of rows handed out
+     */
+    public static long streamAll(LocalDateTime from, LocalDateTime to, Long urlId, RowHandler<UrlCheck> handler)
+            throws SQLException, IOException {
+        var conditions = new ArrayList<String>();
+        conditions.add("1 = 1");
+        if (from != null) {
+            conditions.add("created_at >= ?");
+        }
+        if (to != null) {
+            conditions.add("created_at < ?");
+        }
+        if (urlId != null) {
+            conditions.add("url_id = ?");
+        }
+        String sql = "SELECT * FROM url_checks WHERE " + String.join(" AND ", conditions)
+                + " ORDER BY created_at, id";
+
+        try (var timer = STREAM_ALL_TIMER.startTimer()) {
+            return UnitOfWork.inTransaction(() -> {
+                try (var conn = BaseRepository.getConnection();
+                     var stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    int index = 1;
+                    if (from != null) {
+                        stmt.setTimestamp(index++, Timestamp.valueOf(from));
+                    }
+                    if (to != null) {
+                        stmt.setTimestamp(index++, Timestamp.valueOf(to));
+                    }
+                    if (urlId != null) {
+                        stmt.setLong(index, urlId);
+                    }
+                    stmt.setFetchSize(STREAM_FETCH_SIZE);
+
+                    long count = 0;
+                    try (var resultSet = stmt.executeQuery()) {
+                        while (resultSet.next()) {
+                            handler.handle(extractUrlCheck(resultSet));
+                            count++;
+                        }
+                    } catch (IOException e) {
+                        // Клиент оборвал загрузку: транзакция откатится, наружу уйдет исходная ошибка
+                        throw new UncheckedIOException(e);
+                    }
+                    return count;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     public static Optional<UrlCheck> findLatestCheck(Long urlId) throws SQLException {
         String sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY created_at DESC LIMIT 1";
 
-        try (var conn = BaseRepository.dataSource.getConnection();
+        try (var timer = FIND_LATEST_TIMER.startTimer();
+             var conn = BaseRepository.getConnection();
              var stmt = conn.prepareStatement(sql)) {
 
             stmt.setLong(1, urlId);
             var resultSet = stmt.executeQuery();
 
             if (resultSet.next()) {
-                long id = resultSet.getLong("id");
-                int statusCode = resultSet.getInt("status_code");
-                String title = resultSet.getString("title");
-                String h1 = resultSet.getString("h1");
-                String description = resultSet.getString("description");
-                LocalDateTime createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
-
-                UrlCheck urlCheck = new UrlCheck();
-                urlCheck.setId(id);
-                urlCheck.setStatusCode(statusCode);
-                urlCheck.setTitle(title);
-                urlCheck.setH1(h1);
-                urlCheck.setDescription(description);
-                urlCheck.setUrlId(urlId);
-                urlCheck.setCreatedAt(createdAt);
-
-                return Optional.of(urlCheck);
+                return Optional.of(extractUrlCheck(resultSet));
             }
             return Optional.empty();
         }
@@ -109,33 +239,67 @@ public class UrlCheckRepository {
     public static Optional<UrlCheck> findById(Long id) throws SQLException {
         String sql = "SELECT * FROM url_checks WHERE id = ?";
 
-        try (var conn = BaseRepository.dataSource.getConnection();
+        try (var timer = FIND_BY_ID_TIMER.startTimer();
+             var conn = BaseRepository.getConnection();
              var stmt = conn.prepareStatement(sql)) {
 
             stmt.setLong(1, id);
             var resultSet = stmt.executeQuery();
 
             if (resultSet.next()) {
-                long checkId = resultSet.getLong("id");
-                int statusCode = resultSet.getInt("status_code");
-                String title = resultSet.getString("title");
-                String h1 = resultSet.getString("h1");
-                String description = resultSet.getString("description");
-                Long urlId = resultSet.getLong("url_id");
-                LocalDateTime createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
-
-                UrlCheck urlCheck = new UrlCheck();
-                urlCheck.setId(checkId);
-                urlCheck.setStatusCode(statusCode);
-                urlCheck.setTitle(title);
-                urlCheck.setH1(h1);
-                urlCheck.setDescription(description);
-                urlCheck.setUrlId(urlId);
-                urlCheck.setCreatedAt(createdAt);
-
-                return Optional.of(urlCheck);
+                return Optional.of(extractUrlCheck(resultSet));
             }
             return Optional.empty();
         }
     }
+
+    private static void bindInsert(PreparedStatement stmt, UrlCheck urlCheck) throws SQLException {
+        stmt.setInt(1, urlCheck.getStatusCode());
+        stmt.setString(2, urlCheck.getTitle());
+        stmt.setString(3, urlCheck.getH1());
+        stmt.setString(4, urlCheck.getDescription());
+        stmt.setBoolean(5, urlCheck.isTruncated());
+        stmt.setString(6, urlCheck.getEtag());
+        stmt.setString(7, urlCheck.getLastModified());
+        stmt.setString(8, urlCheck.getBodyHash());
+        setNullableInt(stmt, 9, urlCheck.getTtfbMillis());
+        setNullableInt(stmt, 10, urlCheck.getDownloadMillis());
+        setNullableInt(stmt, 11, urlCheck.getParseMillis());
+        setNullableInt(stmt, 12, urlCheck.getResponseBytes());
+        stmt.setLong(13, urlCheck.getUrlId());
+        stmt.setTimestamp(14, Timestamp.valueOf(urlCheck.getCreatedAt()));
+    }
+
+    private static void setNullableInt(PreparedStatement stmt, int index, Integer value) throws SQLException {
+        if (value != null) {
+            stmt.setInt(index, value);
+        } else {
+            stmt.setNull(index, Types.INTEGER);
+        }
+    }
+
+    static Integer getNullableInt(ResultSet resultSet, String column) throws SQLException {
+        int value = resultSet.getInt(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    private static UrlCheck extractUrlCheck(ResultSet resultSet) throws SQLException {
+        UrlCheck urlCheck = new UrlCheck();
+        urlCheck.setId(resultSet.getLong("id"));
+        urlCheck.setStatusCode(resultSet.getInt("status_code"));
+        urlCheck.setTitle(resultSet.getString("title"));
+        urlCheck.setH1(resultSet.getString("h1"));
+        urlCheck.setDescription(resultSet.getString("description"));
+        urlCheck.setTruncated(resultSet.getBoolean("truncated"));
+        urlCheck.setEtag(resultSet.getString("etag"));
+        urlCheck.setLastModified(resultSet.getString("last_modified"));
+        urlCheck.setBodyHash(resultSet.getString("body_hash"));
+        urlCheck.setTtfbMillis(getNullableInt(resultSet, "ttfb_ms"));
+        urlCheck.setDownloadMillis(getNullableInt(resultSet, "download_ms"));
+        urlCheck.setParseMillis(getNullableInt(resultSet, "parse_ms"));
+        urlCheck.setResponseBytes(getNullableInt(resultSet, "response_bytes"));
+        urlCheck.setUrlId(resultSet.getLong("url_id"));
+        urlCheck.setCreatedAt(resultSet.getTimestamp("created_at").toLocalDateTime());
+        return urlCheck;
+    }
 }
@@ -1,20 +1,84 @@
 package hexlet.code.repository;
 
+import hexlet.code.metrics.Histogram;
 import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.utils.LruCache;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 public class UrlRepository {
+    private static final Histogram SAVE_TIMER = BaseRepository.queryTimer("UrlRepository.save");
+    private static final Histogram SAVE_ALL_TIMER = BaseRepository.queryTimer("UrlRepository.saveAllIgnoringDuplicates");
+    private static final Histogram FIND_ALL_TIMER = BaseRepository.queryTimer("UrlRepository.findAll");
+    private static final Histogram FIND_PAGE_TIMER =
+            BaseRepository.queryTimer("UrlRepository.findPageWithLatestChecks");
+    private static final Histogram FIND_BY_IDS_TIMER =
+            BaseRepository.queryTimer("UrlRepository.findAllWithLatestChecks");
+    private static final Histogram FIND_BY_ID_TIMER = BaseRepository.queryTimer("UrlRepository.findById");
+    private static final Histogram FIND_BY_NAME_TIMER = BaseRepository.queryTimer("UrlRepository.findByName");
+    private static final Histogram FIND_DUE_TIMER = BaseRepository.queryTimer("UrlRepository.findDue");
+    private static final Histogram FIND_UNSCHEDULED_TIMER = BaseRepository.queryTimer("UrlRepository.findUnscheduled");
+    private static final Histogram UPDATE_SCHEDULE_TIMER = BaseRepository.queryTimer("UrlRepository.updateSchedule");
+
+    // H2 понимает ON CONFLICT только в режиме совместимости, поэтому для него вставка с проверкой существования
+    private static final String INSERT_IGNORING_DUPLICATES_SQL = "INSERT INTO urls (name, created_at) "
+            + "SELECT CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP) "
+            + "WHERE NOT EXISTS (SELECT 1 FROM urls WHERE name = ?)";
+    private static final String POSTGRES_INSERT_IGNORING_DUPLICATES_SQL =
+            "INSERT INTO urls (name, created_at) VALUES (?, ?) ON CONFLICT (name) DO NOTHING";
+
+    private static final String WITH_LATEST_CHECK_COLUMNS =
+            "u.id, u.name, u.created_at, u.next_check_at, u.check_interval_seconds, "
+            + "c.id AS check_id, c.status_code, c.title, c.h1, c.description, c.truncated, "
+            + "c.etag, c.last_modified, c.body_hash, c.ttfb_ms, c.download_ms, c.parse_ms, c.response_bytes, "
+            + "c.created_at AS checked_at ";
+    private static final String LATEST_CHECK_JOIN = "LEFT JOIN url_checks c ON c.id = ("
+            + "SELECT lc.id FROM url_checks lc WHERE lc.url_id = u.id "
+            + "ORDER BY lc.created_at DESC, lc.id DESC LIMIT 1) ";
+
+    // Таблица urls почти не меняется, поэтому точечные выборки кэшируются,
+    // включая отрицательные ответы (Optional.empty())
+    private static volatile LruCache<Long, Optional<Url>> byIdCache = new LruCache<>(10_000, Duration.ofMinutes(5));
+    private static volatile LruCache<String, Optional<Url>> byNameCache = new LruCache<>(10_000, Duration.ofMinutes(5));
+
+    /**
+     * Replaces the lookup caches, dropping everything cached so far.
+     */
+    public static void configureCache(int maxSize, Duration ttl) {
+        byIdCache = new LruCache<>(maxSize, ttl);
+        byNameCache = new LruCache<>(maxSize, ttl);
+    }
+
+    public static LruCache.Stats getIdCacheStats() {
+        return byIdCache.getStats();
+    }
+
+    public static LruCache.Stats getNameCacheStats() {
+        return byNameCache.getStats();
+    }
+
     public static void save(Url url) throws SQLException {
         String sql = "INSERT INTO urls (name, created_at) VALUES (?, ?)";
 
-        try (var connection = BaseRepository.dataSource.getConnection();
+        try (var timer = SAVE_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
              var preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             preparedStatement.setString(1, url.getName());
@@ -25,6 +89,131 @@ public class UrlRepository {
             if (generatedKeys.next()) {
                 url.setId(generatedKeys.getLong(1));
             }
+            BaseRepository.listener.urlSaved(url);
+        } finally {
+            byNameCache.invalidate(url.getName());
+            byIdCache.invalidate(url.getId());
+        }
+    }
+
+    /**
+     * Inserts the URLs with one JDBC batch, skipping names that are already stored,
+     * and returns the inserted ones with their ids. The unique index on the name
+     * keeps this correct when the same URL is added concurrently.
+     */
+    public static List<Url> saveAllIgnoringDuplicates(List<Url> urls) throws SQLException {
+        if (urls.isEmpty()) {
+            return List.of();
+        }
+
+        var inserted = new ArrayList<Url>();
+        try (var timer = SAVE_ALL_TIMER.startTimer()) {
+            boolean[] added;
+            try {
+                added = UnitOfWork.inTransaction(() -> insertIgnoringDuplicates(urls, true));
+            } catch (SQLException e) {
+                if (!BaseRepository.isUniqueViolation(e)) {
+                    throw e;
+                }
+                // Тот же адрес вставили параллельно между проверкой и вставкой: повторяем построчно
+                added = insertIgnoringDuplicates(urls, false);
+            }
+            for (int i = 0; i < urls.size(); i++) {
+                if (added[i]) {
+                    inserted.add(urls.get(i));
+                }
+            }
+            assignIds(inserted);
+            inserted.forEach(url -> byIdCache.invalidate(url.getId()));
+        } finally {
+            urls.forEach(url -> byNameCache.invalidate(url.getName()));
+        }
+        inserted.forEach(BaseRepository.listener::urlSaved);
+        return inserted;
+    }
+
+    private static boolean[] insertIgnoringDuplicates(List<Url> urls, boolean batch) throws SQLException {
+        // Имена, сохраненные до вставки: по ним разбираем строки, про которые драйвер ответил SUCCESS_NO_INFO
+        var known = batch ? findExistingNames(urls) : new HashSet<String>();
+        try (var connection = BaseRepository.getConnection()) {
+            boolean postgres = "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+            var sql = postgres ? POSTGRES_INSERT_IGNORING_DUPLICATES_SQL : INSERT_IGNORING_DUPLICATES_SQL;
+            try (var statement = connection.prepareStatement(sql)) {
+                var counts = new int[urls.size()];
+                for (int i = 0; i < urls.size(); i++) {
+                    var url = urls.get(i);
+                    statement.setString(1, url.getName());
+                    statement.setTimestamp(2, Timestamp.valueOf(url.getCreatedAt()));
+                    if (!postgres) {
+                        statement.setString(3, url.getName());
+                    }
+                    if (batch) {
+                        statement.addBatch();
+                        continue;
+                    }
+                    try {
+                        counts[i] = statement.executeUpdate();
+                    } catch (SQLException e) {
+                        if (!BaseRepository.isUniqueViolation(e)) {
+                            throw e;
+                        }
+                    }
+                }
+                if (batch) {
+                    counts = statement.executeBatch();
+                }
+                var added = new boolean[urls.size()];
+                for (int i = 0; i < urls.size(); i++) {
+                    // Повтор имени в том же списке вставкой не считается
+                    added[i] = counts[i] > 0
+                            || counts[i] == Statement.SUCCESS_NO_INFO && known.add(urls.get(i).getName());
+                }
+                return added;
+            }
+        }
+    }
+
+    private static Set<String> findExistingNames(List<Url> urls) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(urls.size(), "?"));
+        String sql = "SELECT name FROM urls WHERE name IN (" + placeholders + ")";
+
+        var names = new HashSet<String>();
+        try (var connection = BaseRepository.getConnection();
+             var statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < urls.size(); i++) {
+                statement.setString(i + 1, urls.get(i).getName());
+            }
+            try (var resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    names.add(resultSet.getString("name"));
+                }
+            }
+        }
+        return names;
+    }
+
+    // Ключи пакетной вставки с пропуском строк драйверы возвращают по-разному, поэтому id читаем по именам
+    private static void assignIds(List<Url> urls) throws SQLException {
+        if (urls.isEmpty()) {
+            return;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(urls.size(), "?"));
+        String sql = "SELECT id, name FROM urls WHERE name IN (" + placeholders + ")";
+
+        var ids = new HashMap<String, Long>();
+        try (var connection = BaseRepository.getConnection();
+             var statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < urls.size(); i++) {
+                statement.setString(i + 1, urls.get(i).getName());
+            }
+            try (var resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.put(resultSet.getString("name"), resultSet.getLong("id"));
+                }
+            }
+        }
+        for (var url : urls) {
+            url.setId(ids.get(url.getName()));
         }
     }
 
@@ -32,7 +221,8 @@ public class UrlRepository {
         String sql = "SELECT * FROM urls ORDER BY created_at DESC";
         var result = new ArrayList<Url>();
 
-        try (var connection = BaseRepository.dataSource.getConnection();
+        try (var timer = FIND_ALL_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
              var statement = connection.createStatement();
              var resultSet = statement.executeQuery(sql)) {
 
@@ -43,26 +233,128 @@ public class UrlRepository {
         return result;
     }
 
+    /**
+     * Loads one keyset page of URLs together with their latest check in a single query.
+     * The page is cut from the (created_at, id) index first, and the latest check of each
+     * URL on it is picked by a correlated subquery served by the (url_id, created_at DESC)
+     * index, so the cost depends on the page size only, not on the table size.
+     */
+    public static KeysetPage<Url> findPageWithLatestChecks(PageRequest request) throws SQLException {
+        var rows = new ArrayList<Url>();
+
+        try (var timer = FIND_PAGE_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
+             var statement = prepareWithLatestChecksPage(connection, request);
+             var resultSet = statement.executeQuery()) {
+
+            while (resultSet.next()) {
+                rows.add(extractUrlWithLatestCheck(resultSet));
+            }
+        }
+        return KeysetPage.of(rows, request.getLimit(), request, url -> new Cursor(url.getCreatedAt(), url.getId()));
+    }
+
+    /**
+     * Same page as {@link #findPageWithLatestChecks}, handed to {@code handler} row by row
+     * while it is read. Only forward pages are supported, since rows arrive newest first.
+     *
+     * @return cursor of the next page, or null when this is the last one
+     */
+    public static String streamPageWithLatestChecks(PageRequest request, RowHandler<Url> handler)
+            throws SQLException, IOException {
+        if (request.isBackward()) {
+            throw new IllegalArgumentException("Only forward pages can be streamed");
+        }
+
+        try (var timer = FIND_PAGE_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
+             var statement = prepareWithLatestChecksPage(connection, request);
+             var resultSet = statement.executeQuery()) {
+
+            return KeysetPage.stream(resultSet, request.getLimit(), UrlRepository::extractUrlWithLatestCheck, handler,
+                    url -> new Cursor(url.getCreatedAt(), url.getId()));
+        }
+    }
+
+    private static PreparedStatement prepareWithLatestChecksPage(Connection connection, PageRequest request)
+            throws SQLException {
+        String sql = "SELECT " + WITH_LATEST_CHECK_COLUMNS
+                + "FROM (SELECT * FROM urls p WHERE " + request.keysetCondition("p")
+                + " ORDER BY " + request.orderBy("p") + " LIMIT ?) u "
+                + LATEST_CHECK_JOIN
+                + "ORDER BY " + request.orderBy("u");
+        var statement = connection.prepareStatement(sql);
+        try {
+            int index = request.bindCursor(statement, 1);
+            statement.setInt(index, request.getLimit() + 1);
+            return statement;
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the given URLs with their latest checks, in the order of {@code ids};
+     * ids that no longer exist are skipped.
+     */
+    public static List<Url> findAllWithLatestChecks(List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        String sql = "SELECT " + WITH_LATEST_CHECK_COLUMNS + "FROM urls u " + LATEST_CHECK_JOIN
+                + "WHERE u.id IN (" + placeholders + ")";
+        var byId = new HashMap<Long, Url>();
+
+        try (var timer = FIND_BY_IDS_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
+             var statement = connection.prepareStatement(sql)) {
+
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setLong(i + 1, ids.get(i));
+            }
+            try (var resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    var url = extractUrlWithLatestCheck(resultSet);
+                    byId.put(url.getId(), url);
+                }
+            }
+        }
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
     public static Optional<Url> findById(Long id) throws SQLException {
+        return byIdCache.get(id, UrlRepository::loadById).map(UrlRepository::copyOf);
+    }
+
+    public static Optional<Url> findByName(String name) throws SQLException {
+        return byNameCache.get(name, UrlRepository::loadByName).map(UrlRepository::copyOf);
+    }
+
+    public static boolean existsByName(String name) throws SQLException {
+        return byNameCache.get(name, UrlRepository::loadByName).isPresent();
+    }
+
+    private static Optional<Url> loadById(Long id) throws SQLException {
         String sql = "SELECT * FROM urls WHERE id = ?";
-        try (var conn = BaseRepository.getConnection();
+        try (var timer = FIND_BY_ID_TIMER.startTimer();
+             var conn = BaseRepository.getConnection();
              var stmt = conn.prepareStatement(sql)) {
             stmt.setLong(1, id);
             var resultSet = stmt.executeQuery();
             if (resultSet.next()) {
-                var url = new Url(resultSet.getString("name"));
-                url.setId(resultSet.getLong("id"));
-                url.setCreatedAt(resultSet.getTimestamp("created_at").toLocalDateTime());
-                return Optional.of(url);
+                return Optional.of(extractUrl(resultSet));
             }
             return Optional.empty();
         }
     }
 
-    public static Optional<Url> findByName(String name) throws SQLException {
+    private static Optional<Url> loadByName(String name) throws SQLException {
         String sql = "SELECT * FROM urls WHERE name = ?";
 
-        try (var connection = BaseRepository.dataSource.getConnection();
+        try (var timer = FIND_BY_NAME_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
              var preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setString(1, name);
@@ -75,22 +367,94 @@ public class UrlRepository {
         }
     }
 
-    public static boolean existsByName(String name) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM urls WHERE name = ?";
+    /**
+     * URLs whose next check is due by {@code until}, earliest first. Served by the
+     * next_check_at index, so only the due slice of the table is read.
+     */
+    public static List<Url> findDue(LocalDateTime until, int limit) throws SQLException {
+        String sql = "SELECT * FROM urls WHERE next_check_at <= ? ORDER BY next_check_at LIMIT ?";
 
-        try (var connection = BaseRepository.dataSource.getConnection();
-             var preparedStatement = connection.prepareStatement(sql)) {
+        try (var timer = FIND_DUE_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
+             var statement = connection.prepareStatement(sql)) {
 
-            preparedStatement.setString(1, name);
-            var resultSet = preparedStatement.executeQuery();
+            statement.setTimestamp(1, Timestamp.valueOf(until));
+            statement.setInt(2, limit);
+            return extractUrls(statement.executeQuery());
+        }
+    }
 
-            if (resultSet.next()) {
-                return resultSet.getInt(1) > 0;
+    /**
+     * URLs that have never been scheduled, e.g. just added ones.
+     */
+    public static List<Url> findUnscheduled(int limit) throws SQLException {
+        String sql = "SELECT * FROM urls WHERE next_check_at IS NULL ORDER BY id LIMIT ?";
+
+        try (var timer = FIND_UNSCHEDULED_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
+             var statement = connection.prepareStatement(sql)) {
+
+            statement.setInt(1, limit);
+            return extractUrls(statement.executeQuery());
+        }
+    }
+
+    public static void updateSchedule(long id, LocalDateTime nextCheckAt, Duration interval) throws SQLException {
+        String sql = "UPDATE urls SET next_check_at = ?, check_interval_seconds = ? WHERE id = ?";
+
+        try (var timer = UPDATE_SCHEDULE_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
+             var statement = connection.prepareStatement(sql)) {
+
+            statement.setTimestamp(1, Timestamp.valueOf(nextCheckAt));
+            statement.setLong(2, interval.toSeconds());
+            statement.setLong(3, id);
+            statement.executeUpdate();
+        } finally {
+            // Расписание нужно только выборкам по id, кэш по имени служит для проверки существования
+            byIdCache.invalidate(id);
+        }
+    }
+
+    /**
+     * Moves the next check of a URL only if it is still {@code expected} ({@code null}
+     * for a never scheduled URL), so of several schedulers that loaded the same row
+     * exactly one wins the lease.
+     *
+     * @return whether this call moved the schedule
+     */
+    public static boolean leaseSchedule(long id, LocalDateTime expected, LocalDateTime nextCheckAt,
+                                        Duration interval) throws SQLException {
+        String sql = "UPDATE urls SET next_check_at = ?, check_interval_seconds = ? WHERE id = ? AND "
+                + (expected == null ? "next_check_at IS NULL" : "next_check_at = ?");
+
+        try (var timer = UPDATE_SCHEDULE_TIMER.startTimer();
+             var connection = BaseRepository.getConnection();
+             var statement = connection.prepareStatement(sql)) {
+
+            statement.setTimestamp(1, Timestamp.valueOf(nextCheckAt));
+            statement.setLong(2, interval.toSeconds());
+            statement.setLong(3, id);
+            if (expected != null) {
+                statement.setTimestamp(4, Timestamp.valueOf(expected));
             }
-            return false;
+            return statement.executeUpdate() == 1;
+        } finally {
+            byIdCache.invalidate(id);
         }
     }
 
+    // Кэш отдает копии, чтобы вызывающий код не мог изменить закэшированный объект
+    private static Url copyOf(Url url) {
+        var copy = new Url();
+        copy.setId(url.getId());
+        copy.setName(url.getName());
+        copy.setCreatedAt(url.getCreatedAt());
+        copy.setNextCheckAt(url.getNextCheckAt());
+        copy.setCheckIntervalSeconds(url.getCheckIntervalSeconds());
+        return copy;
+    }
+
     private static Url extractUrl(ResultSet resultSet) throws SQLException {
         var url = new Url();
         url.setId(resultSet.getLong("id"));
@@ -101,6 +465,56 @@ public class UrlRepository {
             url.setCreatedAt(timestamp.toLocalDateTime());
         }
 
+        Timestamp nextCheckAt = resultSet.getTimestamp("next_check_at");
+        if (nextCheckAt != null) {
+            url.setNextCheckAt(nextCheckAt.toLocalDateTime());
+        }
+        long interval = resultSet.getLong("check_interval_seconds");
+        if (!resultSet.wasNull()) {
+            url.setCheckIntervalSeconds(interval);
+        }
+
         return url;
     }
+
+    private static List<Url> extractUrls(ResultSet resultSet) throws SQLException {
+        try (resultSet) {
+            var result = new ArrayList<Url>();
+            while (resultSet.next()) {
+                result.add(extractUrl(resultSet));
+            }
+            return result;
+        }
+    }
+
+    private static Url extractUrlWithLatestCheck(ResultSet resultSet) throws SQLException {
+        var url = extractUrl(resultSet);
+        url.setLatestCheck(extractLatestCheck(resultSet, url.getId()));
+        return url;
+    }
+
+    private static UrlCheck extractLatestCheck(ResultSet resultSet, long urlId) throws SQLException {
+        long checkId = resultSet.getLong("check_id");
+        if (resultSet.wasNull()) {
+            return null;
+        }
+
+        var urlCheck = new UrlCheck();
+        urlCheck.setId(checkId);
+        urlCheck.setStatusCode(resultSet.getInt("status_code"));
+        urlCheck.setTitle(resultSet.getString("title"));
+        urlCheck.setH1(resultSet.getString("h1"));
+        urlCheck.setDescription(resultSet.getString("description"));
+        urlCheck.setTruncated(resultSet.getBoolean("truncated"));
+        urlCheck.setEtag(resultSet.getString("etag"));
+        urlCheck.setLastModified(resultSet.getString("last_modified"));
+        urlCheck.setBodyHash(resultSet.getString("body_hash"));
+        urlCheck.setTtfbMillis(UrlCheckRepository.getNullableInt(resultSet, "ttfb_ms"));
+        urlCheck.setDownloadMillis(UrlCheckRepository.getNullableInt(resultSet, "download_ms"));
+        urlCheck.setParseMillis(UrlCheckRepository.getNullableInt(resultSet, "parse_ms"));
+        urlCheck.setResponseBytes(UrlCheckRepository.getNullableInt(resultSet, "response_bytes"));
+        urlCheck.setUrlId(urlId);
+        urlCheck.setCreatedAt(resultSet.getTimestamp("checked_at").toLocalDateTime());
+        return urlCheck;
+    }
 }
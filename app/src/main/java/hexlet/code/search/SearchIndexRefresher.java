@@ -0,0 +1,76 @@
+package hexlet.code.search;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rebuilds the search index from the database every interval. The index is
+ * otherwise updated only by saves made in this process, so with several
+ * instances behind a balancer this bounds how long another instance's sites
+ * and checks stay unsearchable here.
+ */
+@Slf4j
+public final class SearchIndexRefresher {
+    private final UrlSearchIndex index;
+    private final Duration interval;
+
+    private volatile boolean running;
+    private Thread thread;
+    // Остановка ждет поток под этой блокировкой; монитор synchronized прикрепил бы виртуальный поток
+    private final ReentrantLock lifecycle = new ReentrantLock();
+
+    public SearchIndexRefresher(UrlSearchIndex index, Duration interval) {
+        this.index = index;
+        this.interval = interval;
+    }
+
+    public void start() {
+        lifecycle.lock();
+        try {
+            if (running) {
+                return;
+            }
+            running = true;
+            thread = Thread.ofVirtual().name("search-index-refresher").start(this::loop);
+        } finally {
+            lifecycle.unlock();
+        }
+    }
+
+    public void stop() {
+        lifecycle.lock();
+        try {
+            running = false;
+            if (thread != null) {
+                thread.interrupt();
+                try {
+                    thread.join(1_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                thread = null;
+            }
+        } finally {
+            lifecycle.unlock();
+        }
+    }
+
+    private void loop() {
+        while (running) {
+            try {
+                // Сразу после старта индекс только что построен, поэтому первый проход через интервал
+                Thread.sleep(interval.toMillis());
+                long startedAt = System.nanoTime();
+                index.rebuild();
+                log.debug("Rebuilt search index of {} URLs in {} ms", index.size(),
+                        (System.nanoTime() - startedAt) / 1_000_000);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("Search index rebuild failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package hexlet.code.search;
+
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.PageRequest;
+import hexlet.code.repository.UrlRepository;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over each URL's name and its latest check's title,
+ * h1 and description. It is built at startup and then kept current from
+ * repository saves, so a search never scans tables. Saves made by other
+ * instances sharing the database are not seen until the next {@link #rebuild()},
+ * which {@link SearchIndexRefresher} runs periodically. Every query word must
+ * match a prefix of some indexed word; matches in the name weigh more than in
+ * the title and h1, and those more than in the description. The index holds
+ * one entry per URL, so its size follows the number of sites, not checks,
+ * and a check older than the one already indexed for the URL is ignored.
+ */
+public final class UrlSearchIndex {
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Set<String> STOP_WORDS = Set.of("http", "https", "www");
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int REBUILD_PAGE_SIZE = 1_000;
+
+    private static final int NAME_WEIGHT = 4;
+    private static final int TITLE_WEIGHT = 3;
+    private static final int H1_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    private static final class Entries {
+        // Отсортированный словарь позволяет искать по префиксу
+        private final TreeMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+        // Имя нужно, чтобы пересчитать слова сайта при новой проверке; тексты проверки не храним
+        private final Map<Long, String> names = new HashMap<>();
+        private final Map<Long, Map<String, Integer>> documentTokens = new HashMap<>();
+        private final Map<Long, CheckVersion> checks = new HashMap<>();
+
+        void replace(long urlId, String name, Map<String, Integer> tokens, CheckVersion check) {
+            var indexed = checks.get(urlId);
+            if (check != null && indexed != null && check.isBefore(indexed)) {
+                return;
+            }
+            if (check != null) {
+                checks.put(urlId, check);
+            } else {
+                checks.remove(urlId);
+            }
+            var previous = documentTokens.put(urlId, tokens);
+            if (previous != null) {
+                for (var token : previous.keySet()) {
+                    var ids = postings.get(token);
+                    ids.remove(urlId);
+                    if (ids.isEmpty()) {
+                        postings.remove(token);
+                    }
+                }
+            }
+            tokens.forEach((token, weight) -> postings.computeIfAbsent(token, key -> new HashMap<>()).put(urlId, weight));
+            names.put(urlId, name);
+        }
+    }
+
+    // Порядок проверок тот же, что у последней проверки в репозитории: created_at, затем id
+    private record CheckVersion(LocalDateTime createdAt, Long id) {
+        static CheckVersion of(UrlCheck check) {
+            return check != null ? new CheckVersion(check.getCreatedAt(), check.getId()) : null;
+        }
+
+        boolean isBefore(CheckVersion other) {
+            if (createdAt != null && other.createdAt != null && !createdAt.equals(other.createdAt)) {
+                return createdAt.isBefore(other.createdAt);
+            }
+            return id != null && other.id != null && id < other.id;
+        }
+    }
+
+    private record Change(long urlId, String name, Map<String, Integer> tokens, CheckVersion check) {
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private Entries entries = new Entries();
+    // Изменения, пришедшие во время перестроения: новый индекс мог прочитать строки до них
+    private List<Change> changesDuringRebuild;
+
+    /**
+     * Reads every URL with its latest check, page by page, into a new index and
+     * then swaps it in. Searches keep using the old index meanwhile, and saves
+     * made during the rebuild are applied to both.
+     */
+    public void rebuild() throws SQLException {
+        rebuildLock.lock();
+        try {
+            rebuildExclusively();
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private void rebuildExclusively() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        var rebuilt = new Entries();
+        try {
+            var request = PageRequest.first(REBUILD_PAGE_SIZE);
+            while (true) {
+                var page = UrlRepository.findPageWithLatestChecks(request);
+                for (var url : page.getItems()) {
+                    var check = url.getLatestCheck();
+                    rebuilt.replace(url.getId(), url.getName(), check != null
+                            ? tokensOf(url.getName(), check.getTitle(), check.getH1(), check.getDescription())
+                            : tokensOf(url.getName(), null, null, null), CheckVersion.of(check));
+                }
+                if (page.getNextCursor() == null) {
+                    break;
+                }
+                request = PageRequest.of(page.getNextCursor(), null, REBUILD_PAGE_SIZE);
+            }
+        } catch (SQLException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (var change : changesDuringRebuild) {
+                rebuilt.replace(change.urlId(), change.name(), change.tokens(), change.check());
+            }
+            changesDuringRebuild = null;
+            entries = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(Url url, UrlCheck latestCheck) {
+        var tokens = latestCheck != null
+                ? tokensOf(url.getName(), latestCheck.getTitle(), latestCheck.getH1(), latestCheck.getDescription())
+                : tokensOf(url.getName(), null, null, null);
+        lock.writeLock().lock();
+        try {
+            replace(url.getId(), url.getName(), tokens, CheckVersion.of(latestCheck));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the check part of a URL's entry with a newly saved check,
+     * unless a newer check of the URL is already indexed.
+     */
+    public void updateCheck(UrlCheck check) {
+        // Имя читаем под той же блокировкой, что и замену, иначе более старая проверка может записаться последней
+        lock.writeLock().lock();
+        try {
+            var name = entries.names.get(check.getUrlId());
+            if (name == null) {
+                // Сайт добавлен другим экземпляром и попадет в индекс при следующем перестроении
+                return;
+            }
+            replace(check.getUrlId(), name, tokensOf(name, check.getTitle(), check.getH1(), check.getDescription()),
+                    CheckVersion.of(check));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the best matching URLs, best first; ties go to the newer URL.
+     */
+    public List<Long> search(String query, int limit) {
+        var terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            var perTerm = new ArrayList<Map<Long, Integer>>();
+            for (var term : terms) {
+                var matches = match(term);
+                if (matches.isEmpty()) {
+                    return List.of();
+                }
+                perTerm.add(matches);
+            }
+            // Пересечение начинаем с самого редкого слова
+            perTerm.sort(Comparator.comparingInt(Map::size));
+
+            var scores = new HashMap<>(perTerm.getFirst());
+            for (var matches : perTerm.subList(1, perTerm.size())) {
+                scores.entrySet().removeIf(entry -> !matches.containsKey(entry.getKey()));
+                scores.replaceAll((id, score) -> score + matches.get(id));
+            }
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.<Long, Integer>comparingByKey().reversed()))
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.names.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Вызывается под блокировкой записи
+    private void replace(long urlId, String name, Map<String, Integer> tokens, CheckVersion check) {
+        entries.replace(urlId, name, tokens, check);
+        if (changesDuringRebuild != null) {
+            changesDuringRebuild.add(new Change(urlId, name, tokens, check));
+        }
+    }
+
+    // Лучший вес документа среди всех слов словаря, начинающихся с term
+    private Map<Long, Integer> match(String term) {
+        var result = new HashMap<Long, Integer>();
+        for (var ids : entries.postings.subMap(term, true, term + Character.MAX_VALUE, true).values()) {
+            ids.forEach((id, weight) -> result.merge(id, weight, Math::max));
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> tokensOf(String name, String title, String h1, String description) {
+        var tokens = new HashMap<String, Integer>();
+        addTokens(tokens, name, NAME_WEIGHT);
+        addTokens(tokens, title, TITLE_WEIGHT);
+        addTokens(tokens, h1, H1_WEIGHT);
+        addTokens(tokens, description, DESCRIPTION_WEIGHT);
+        return tokens;
+    }
+
+    private static void addTokens(Map<String, Integer> tokens, String text, int weight) {
+        for (var token : tokenize(text)) {
+            tokens.merge(token, weight, Math::max);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        var tokens = new ArrayList<String>();
+        for (var token : SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+            if (token.length() >= MIN_TOKEN_LENGTH && !STOP_WORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
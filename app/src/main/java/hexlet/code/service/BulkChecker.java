@@ -0,0 +1,216 @@
+package hexlet.code.service;
+
+import hexlet.code.model.Url;
+import hexlet.code.repository.PageRequest;
+import hexlet.code.repository.UrlRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Re-checks every URL in one sweep. URLs are read page by page and their
+ * requests are pipelined on the shared HttpClient, bounded by a global
+ * in-flight limit and by a per-host limit so no single origin is hammered.
+ * {@link #shutdown} stops a running sweep from admitting more URLs and waits
+ * for the checks already sent, so their results reach the check writer before
+ * it closes.
+ */
+@Slf4j
+public final class BulkChecker {
+    private static final int PAGE_SIZE = 500;
+
+    @Getter
+    public static final class Progress {
+        private final boolean running;
+        private final int submitted;
+        private final int completed;
+        private final int failed;
+        private final LocalDateTime startedAt;
+        private final LocalDateTime finishedAt;
+
+        private Progress(boolean running, int submitted, int completed, int failed,
+                         LocalDateTime startedAt, LocalDateTime finishedAt) {
+            this.running = running;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.startedAt = startedAt;
+            this.finishedAt = finishedAt;
+        }
+    }
+
+    private final UrlChecker checker;
+    private final int maxInFlight;
+    private final int maxPerHost;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile boolean closed;
+    private volatile Thread sweeper;
+
+    public BulkChecker(UrlChecker checker, int maxInFlight, int maxPerHost) {
+        this.checker = checker;
+        this.maxInFlight = maxInFlight;
+        this.maxPerHost = maxPerHost;
+    }
+
+    /**
+     * Starts a sweep in the background.
+     *
+     * @return false when a sweep is already running
+     */
+    public boolean start() {
+        if (closed || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        submitted.set(0);
+        completed.set(0);
+        failed.set(0);
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+        sweeper = Thread.ofVirtual().name("bulk-check").start(this::sweep);
+        return true;
+    }
+
+    /**
+     * Stops taking new work: a running sweep admits no more URLs, and further
+     * {@link #start} calls are refused. Waits up to {@code timeoutMillis} for the
+     * checks already sent, then gives up on them.
+     */
+    public void shutdown(long timeoutMillis) {
+        closed = true;
+        var thread = sweeper;
+        if (thread == null) {
+            return;
+        }
+        try {
+            if (!thread.join(Duration.ofMillis(timeoutMillis))) {
+                log.warn("Bulk check did not finish within {} ms, abandoning it", timeoutMillis);
+                thread.interrupt();
+            }
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Progress getProgress() {
+        return new Progress(running.get(), submitted.get(), completed.get(), failed.get(), startedAt, finishedAt);
+    }
+
+    private void sweep() {
+        var sweep = new Sweep();
+        try {
+            var request = PageRequest.first(PAGE_SIZE);
+            while (true) {
+                var page = UrlRepository.findPageWithLatestChecks(request);
+                for (var url : page.getItems()) {
+                    if (closed) {
+                        break;
+                    }
+                    sweep.submit(url);
+                }
+                if (closed || page.getNextCursor() == null) {
+                    break;
+                }
+                request = PageRequest.of(page.getNextCursor(), null, PAGE_SIZE);
+            }
+            sweep.awaitCompletion();
+            log.info("Bulk check finished: {} checked, {} failed", completed.get(), failed.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Bulk check aborted", e);
+        } finally {
+            finishedAt = LocalDateTime.now();
+            running.set(false);
+        }
+    }
+
+    /**
+     * State of one sweep. A URL holds a global permit from the moment it is
+     * admitted until its check completes; URLs whose host is already at its
+     * limit wait in that host's lane and are dispatched as the host frees up.
+     */
+    private final class Sweep {
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        private final Map<String, HostLane> lanes = new ConcurrentHashMap<>();
+
+        void submit(Url url) throws InterruptedException {
+            inFlight.acquire();
+            submitted.incrementAndGet();
+            lanes.computeIfAbsent(PageFetcher.hostOf(url.getName()), host -> new HostLane()).offer(url);
+        }
+
+        void awaitCompletion() throws InterruptedException {
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+
+        private final class HostLane {
+            private final Deque<Url> pending = new ArrayDeque<>();
+            private int active;
+            // Полоса работает на виртуальных потоках; монитор synchronized прикрепил бы их к несущим
+            private final ReentrantLock lock = new ReentrantLock();
+
+            void offer(Url url) {
+                lock.lock();
+                try {
+                    if (active >= maxPerHost) {
+                        pending.addLast(url);
+                        return;
+                    }
+                    active++;
+                } finally {
+                    lock.unlock();
+                }
+                dispatch(url);
+            }
+
+            private void dispatch(Url url) {
+                checker.checkAsync(url).whenComplete((check, error) -> {
+                    if (error != null) {
+                        failed.incrementAndGet();
+                        log.debug("Bulk check of {} failed", url.getName(), error);
+                    } else {
+                        completed.incrementAndGet();
+                    }
+                    inFlight.release();
+
+                    Url next;
+                    lock.lock();
+                    try {
+                        if (closed) {
+                            // Остановка: ждущие в полосе сайты не проверяем и отдаем их места
+                            inFlight.release(pending.size());
+                            pending.clear();
+                        }
+                        next = pending.pollFirst();
+                        if (next == null) {
+                            active--;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (next != null) {
+                        dispatch(next);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package hexlet.code.service;
+
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.utils.JsonWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Writes raw checks as CSV or NDJSON while they are read from the database,
+ * so an export of any size runs in constant memory. Checks already rolled up
+ * into daily history are not part of the export.
+ */
+@Slf4j
+public final class CheckExporter {
+    private static final String CSV_HEADER =
+            "id,url_id,status_code,title,h1,description,truncated,ttfb_ms,download_ms,parse_ms,response_bytes,"
+            + "created_at\n";
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private CheckExporter() {
+    }
+
+    public static long export(Writer out, Format format, LocalDateTime from, LocalDateTime to, Long urlId)
+            throws SQLException, IOException {
+        long startedAt = System.nanoTime();
+        if (format == Format.CSV) {
+            out.write(CSV_HEADER);
+        }
+        long rows = UrlCheckRepository.streamAll(from, to, urlId,
+                check -> writeRow(out, format, check));
+        out.flush();
+        log.info("Exported {} checks as {} in {} ms", rows, format, (System.nanoTime() - startedAt) / 1_000_000);
+        return rows;
+    }
+
+    private static void writeRow(Writer out, Format format, UrlCheck check) throws IOException {
+        if (format == Format.NDJSON) {
+            new JsonWriter(out).beginObject()
+                    .name("id").value(check.getId())
+                    .name("urlId").value(check.getUrlId())
+                    .name("statusCode").value(check.getStatusCode())
+                    .name("title").value(check.getTitle())
+                    .name("h1").value(check.getH1())
+                    .name("description").value(check.getDescription())
+                    .name("truncated").value(check.isTruncated())
+                    .name("ttfbMs").value(check.getTtfbMillis())
+                    .name("downloadMs").value(check.getDownloadMillis())
+                    .name("parseMs").value(check.getParseMillis())
+                    .name("responseBytes").value(check.getResponseBytes())
+                    .name("createdAt").value(check.getCreatedAt().toString())
+                    .endObject();
+            out.write('\n');
+            return;
+        }
+
+        out.write(Long.toString(check.getId()));
+        out.write(',');
+        out.write(Long.toString(check.getUrlId()));
+        out.write(',');
+        out.write(Integer.toString(check.getStatusCode()));
+        out.write(',');
+        writeCsvField(out, check.getTitle());
+        out.write(',');
+        writeCsvField(out, check.getH1());
+        out.write(',');
+        writeCsvField(out, check.getDescription());
+        out.write(',');
+        out.write(Boolean.toString(check.isTruncated()));
+        out.write(',');
+        writeCsvNumber(out, check.getTtfbMillis());
+        out.write(',');
+        writeCsvNumber(out, check.getDownloadMillis());
+        out.write(',');
+        writeCsvNumber(out, check.getParseMillis());
+        out.write(',');
+        writeCsvNumber(out, check.getResponseBytes());
+        out.write(',');
+        out.write(check.getCreatedAt().toString());
+        out.write('\n');
+    }
+
+    // Для проверок без замеров (сохраненных до их появления) поле остается пустым
+    private static void writeCsvNumber(Writer out, Integer value) throws IOException {
+        if (value != null) {
+            out.write(value.toString());
+        }
+    }
+
+    // Поле в кавычках, если в нем есть разделитель, кавычка или перевод строки (RFC 4180)
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,150 @@
+package hexlet.code.service;
+
+import hexlet.code.model.Url;
+import hexlet.code.repository.UnitOfWork;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs URL checks off the request thread: jobs go to a bounded queue and are
+ * processed by a fixed number of virtual-thread workers, so check throughput
+ * is sized independently of the web server's thread pool. The state of a
+ * finished check stays visible for a while so its page can show the result,
+ * and is then dropped, so the state map holds recent checks, not every URL
+ * ever checked.
+ */
+@Slf4j
+public final class CheckQueue {
+
+    public enum Status {
+        PENDING, RUNNING, DONE, FAILED
+    }
+
+    @Getter
+    public static final class CheckState {
+        private final Status status;
+        private final String error;
+        // System.nanoTime() завершения; для активных состояний не используется
+        private final long finishedAt;
+
+        private CheckState(Status status, String error) {
+            this.status = status;
+            this.error = error;
+            this.finishedAt = System.nanoTime();
+        }
+
+        public boolean isActive() {
+            return status == Status.PENDING || status == Status.RUNNING;
+        }
+    }
+
+    private final UrlChecker checker;
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, CheckState> states = new ConcurrentHashMap<>();
+    private final long finishedTtlNanos;
+    private final AtomicLong nextPruneAt = new AtomicLong();
+
+    /**
+     * @param finishedTtl how long the state of a finished check is kept for {@link #getState}
+     */
+    public CheckQueue(UrlChecker checker, int workers, int capacity, Duration finishedTtl) {
+        this.checker = checker;
+        this.finishedTtlNanos = finishedTtl.toNanos();
+        this.nextPruneAt.set(System.nanoTime() + finishedTtlNanos);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), Thread.ofVirtual().name("check-worker-", 0).factory());
+    }
+
+    /**
+     * Queues a check for the URL. A URL that is already pending or running is not queued twice.
+     *
+     * @return false when the queue is full and the job was rejected
+     */
+    public boolean submit(long urlId) {
+        pruneFinished();
+        var queued = new CheckState(Status.PENDING, null);
+        var current = states.merge(urlId, queued, (previous, next) -> previous.isActive() ? previous : next);
+        if (current != queued) {
+            return true;
+        }
+
+        try {
+            executor.execute(() -> run(urlId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            states.remove(urlId, queued);
+            return false;
+        }
+    }
+
+    public Optional<CheckState> getState(long urlId) {
+        pruneFinished();
+        return Optional.ofNullable(states.get(urlId)).filter(state -> !isExpired(state, System.nanoTime()));
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops accepting jobs and lets queued ones finish within the timeout.
+     */
+    public void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Просмотр всей карты не чаще раза в TTL, и только одним из вызывающих потоков
+    private void pruneFinished() {
+        long now = System.nanoTime();
+        long due = nextPruneAt.get();
+        if (now - due < 0 || !nextPruneAt.compareAndSet(due, now + finishedTtlNanos)) {
+            return;
+        }
+        states.entrySet().removeIf(entry -> isExpired(entry.getValue(), now));
+    }
+
+    private boolean isExpired(CheckState state, long now) {
+        return !state.isActive() && now - state.getFinishedAt() >= finishedTtlNanos;
+    }
+
+    private void run(long urlId) {
+        states.put(urlId, new CheckState(Status.RUNNING, null));
+        try {
+            Url url;
+            // Чтения задачи идут через одно соединение, которое возвращается в пул до запроса к сайту
+            try (var unitOfWork = UnitOfWork.begin("check")) {
+                url = UrlRepository.findById(urlId)
+                        .orElseThrow(() -> new IllegalStateException("Url " + urlId + " not found"));
+                url.setLatestCheck(UrlCheckRepository.findLatestCheck(urlId).orElse(null));
+            }
+            checker.check(url);
+            states.put(urlId, new CheckState(Status.DONE, null));
+        } catch (InterruptedException e) {
+            states.put(urlId, new CheckState(Status.FAILED, "Check was interrupted"));
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Check of url {} failed", urlId, e);
+            states.put(urlId, new CheckState(Status.FAILED, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.repository.UrlCheckDailyRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps url_checks bounded. Every run rolls checks older than the retention
+ * window into per-day aggregates and deletes them, in small transactions with
+ * a pause in between, so new checks are never held up behind a long delete.
+ * The cutoff is always a day boundary, so a day is rolled up from a complete
+ * set of checks.
+ */
+@Slf4j
+public final class CheckRetention {
+    private static final Counter ROLLED_UP = Metrics.counter("check_retention_rolled_up_total",
+            "Raw checks rolled up into daily aggregates and deleted");
+    private static final long PAUSE_MILLIS = 50;
+
+    private final Duration keep;
+    private final Duration interval;
+    private final int batchSize;
+
+    private volatile boolean running;
+    private Thread thread;
+    // Остановка ждет поток под этой блокировкой; монитор synchronized прикрепил бы виртуальный поток
+    private final ReentrantLock lifecycle = new ReentrantLock();
+
+    public CheckRetention(Duration keep, Duration interval, int batchSize) {
+        this.keep = keep;
+        this.interval = interval;
+        this.batchSize = batchSize;
+    }
+
+    public void start() {
+        lifecycle.lock();
+        try {
+            if (running) {
+                return;
+            }
+            running = true;
+            thread = Thread.ofVirtual().name("check-retention").start(this::loop);
+        } finally {
+            lifecycle.unlock();
+        }
+    }
+
+    public void stop() {
+        lifecycle.lock();
+        try {
+            running = false;
+            if (thread != null) {
+                thread.interrupt();
+                try {
+                    thread.join(1_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                thread = null;
+            }
+        } finally {
+            lifecycle.unlock();
+        }
+    }
+
+    /**
+     * Rolls up everything before the cutoff.
+     *
+     * @return number of checks rolled up
+     */
+    public int runOnce() throws SQLException, InterruptedException {
+        var cutoff = LocalDate.now().minusDays(keep.toDays()).atStartOfDay();
+        int total = 0;
+        int rolledUp;
+        do {
+            rolledUp = UrlCheckDailyRepository.rollUpBatch(cutoff, batchSize);
+            total += rolledUp;
+            ROLLED_UP.add(rolledUp);
+            if (rolledUp == batchSize) {
+                // Даем пройти вставкам новых проверок между пачками
+                Thread.sleep(PAUSE_MILLIS);
+            }
+        } while (rolledUp == batchSize);
+        return total;
+    }
+
+    private void loop() {
+        while (running) {
+            try {
+                // Первый проход через интервал после старта, чтобы не нагружать базу при деплое
+                Thread.sleep(interval.toMillis());
+                int rolledUp = runOnce();
+                if (rolledUp > 0) {
+                    log.info("Rolled up {} checks older than {} days", rolledUp, keep.toDays());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("Check retention run failed", e);
+            }
+        }
+    }
+}
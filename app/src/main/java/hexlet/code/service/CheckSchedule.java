@@ -0,0 +1,61 @@
+package hexlet.code.service;
+
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Adaptive re-check interval of a URL. A site whose status, title or h1 changed
+ * since the previous check is checked twice as often, a stable one half as often
+ * again, within [min, max]. Every next check time is shifted by a random jitter so
+ * URLs added or checked together drift apart instead of coming due at once.
+ */
+public final class CheckSchedule {
+    private final Duration baseInterval;
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final double jitter;
+
+    public CheckSchedule(Duration baseInterval, Duration minInterval, Duration maxInterval, double jitter) {
+        this.baseInterval = baseInterval;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.jitter = jitter;
+    }
+
+    public Duration intervalOf(Url url) {
+        var seconds = url.getCheckIntervalSeconds();
+        return seconds != null ? Duration.ofSeconds(seconds) : baseInterval;
+    }
+
+    public Duration nextInterval(Duration current, UrlCheck previous, UrlCheck check) {
+        if (previous == null) {
+            return current;
+        }
+        var next = changed(previous, check) ? current.dividedBy(2) : current.multipliedBy(3).dividedBy(2);
+        if (next.compareTo(minInterval) < 0) {
+            return minInterval;
+        }
+        return next.compareTo(maxInterval) > 0 ? maxInterval : next;
+    }
+
+    public LocalDateTime nextCheckAt(LocalDateTime from, Duration interval) {
+        double factor = 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return from.plusSeconds(Math.round(interval.toSeconds() * factor));
+    }
+
+    static boolean changed(UrlCheck previous, UrlCheck check) {
+        // 304 означает, что страница не менялась, его код ответа со 200 не сравниваем
+        if (check.getStatusCode() == 304 || previous.getStatusCode() == 304) {
+            return !Objects.equals(previous.getTitle(), check.getTitle())
+                    || !Objects.equals(previous.getH1(), check.getH1());
+        }
+        return previous.getStatusCode() != check.getStatusCode()
+                || !Objects.equals(previous.getTitle(), check.getTitle())
+                || !Objects.equals(previous.getH1(), check.getH1());
+    }
+}
@@ -0,0 +1,167 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.repository.UrlRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dispatches periodic re-checks. The schedule lives in urls.next_check_at, so it
+ * survives restarts; every tick only the URLs coming due within the next tick
+ * are read and kept in a delay queue until their time. A dispatched URL is
+ * leased one interval ahead before it is queued, so a failed check does not
+ * come back on every tick, and the check itself replaces the lease with the
+ * adapted interval once it is stored. The lease is conditional on the
+ * next_check_at that was read, so several instances can share one database
+ * without checking the same URL twice.
+ */
+@Slf4j
+public final class CheckScheduler {
+    private static final Counter DISPATCHED = Metrics.counter("check_scheduler_dispatched_total",
+            "Scheduled checks handed to the check queue");
+    private static final Counter LEASE_LOST = Metrics.counter("check_scheduler_lease_lost_total",
+            "Due checks skipped because another scheduler had already leased them");
+
+    private static final class Due implements Delayed {
+        private final long urlId;
+        private final Duration interval;
+        private final LocalDateTime nextCheckAt;
+        private final long dueAtNanos;
+
+        Due(long urlId, Duration interval, LocalDateTime nextCheckAt, long dueAtNanos) {
+            this.urlId = urlId;
+            this.interval = interval;
+            this.nextCheckAt = nextCheckAt;
+            this.dueAtNanos = dueAtNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueAtNanos, ((Due) other).dueAtNanos);
+        }
+    }
+
+    private final CheckQueue queue;
+    private final CheckSchedule schedule;
+    private final Duration tick;
+    private final int batchSize;
+
+    private final DelayQueue<Due> due = new DelayQueue<>();
+    private final Set<Long> planned = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+    private Thread thread;
+    // Остановка ждет поток под этой блокировкой; монитор synchronized прикрепил бы виртуальный поток
+    private final ReentrantLock lifecycle = new ReentrantLock();
+
+    public CheckScheduler(CheckQueue queue, CheckSchedule schedule, Duration tick, int batchSize) {
+        this.queue = queue;
+        this.schedule = schedule;
+        this.tick = tick;
+        this.batchSize = batchSize;
+    }
+
+    public void start() {
+        lifecycle.lock();
+        try {
+            if (running) {
+                return;
+            }
+            running = true;
+            thread = Thread.ofVirtual().name("check-scheduler").start(this::loop);
+        } finally {
+            lifecycle.unlock();
+        }
+    }
+
+    public void stop() {
+        lifecycle.lock();
+        try {
+            running = false;
+            if (thread != null) {
+                thread.interrupt();
+                try {
+                    thread.join(1_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                thread = null;
+            }
+        } finally {
+            lifecycle.unlock();
+        }
+    }
+
+    public int getPlannedCount() {
+        return due.size();
+    }
+
+    private void loop() {
+        long nextLoadAt = System.nanoTime();
+        while (running) {
+            try {
+                if (System.nanoTime() - nextLoadAt >= 0) {
+                    nextLoadAt = System.nanoTime() + tick.toNanos();
+                    load();
+                }
+                var item = due.poll(nextLoadAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (item != null) {
+                    dispatch(item);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("Check scheduler tick failed", e);
+            }
+        }
+    }
+
+    private void load() throws SQLException {
+        var now = LocalDateTime.now();
+
+        // Новые сайты получают первую проверку через интервал со случайным сдвигом
+        for (var url : UrlRepository.findUnscheduled(batchSize)) {
+            var interval = schedule.intervalOf(url);
+            UrlRepository.leaseSchedule(url.getId(), null, schedule.nextCheckAt(now, interval), interval);
+        }
+
+        long nowNanos = System.nanoTime();
+        for (var url : UrlRepository.findDue(now.plus(tick), batchSize)) {
+            if (planned.add(url.getId())) {
+                long delay = Duration.between(now, url.getNextCheckAt()).toNanos();
+                due.add(new Due(url.getId(), schedule.intervalOf(url), url.getNextCheckAt(),
+                        nowNanos + Math.max(delay, 0)));
+            }
+        }
+    }
+
+    private void dispatch(Due item) throws SQLException {
+        planned.remove(item.urlId);
+        var leasedUntil = schedule.nextCheckAt(LocalDateTime.now(), item.interval);
+        // Строку мог уже забрать другой узел или сохраненная проверка: тогда next_check_at изменился
+        if (!UrlRepository.leaseSchedule(item.urlId, item.nextCheckAt, leasedUntil, item.interval)) {
+            LEASE_LOST.increment();
+            return;
+        }
+        if (queue.submit(item.urlId)) {
+            DISPATCHED.increment();
+        } else if (planned.add(item.urlId)) {
+            // Очередь переполнена, пробуем снова на следующем тике; аренда уже наша
+            due.add(new Due(item.urlId, item.interval, leasedUntil, System.nanoTime() + tick.toNanos()));
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package hexlet.code.service;
+
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.UrlCheckRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind buffer for check results. Checks are queued and written by a
+ * single flusher thread with {@link UrlCheckRepository#saveAll}, either when a
+ * full batch has accumulated or when the oldest buffered check has waited for
+ * the maximum delay. Callers get a future that completes once their row is stored.
+ * If the database rejects a batch, its rows are written one by one, so only the
+ * rejected check fails. Closing is ordered with submits: a check is either
+ * buffered before the writer stops accepting, and then written, or refused.
+ */
+@Slf4j
+public final class CheckWriter {
+
+    @Getter
+    public static final class Stats {
+        private final long flushes;
+        private final long rows;
+        private final long maxBatchSize;
+        private final long totalFlushMillis;
+        private final long maxFlushMillis;
+
+        private Stats(long flushes, long rows, long maxBatchSize, long totalFlushMillis, long maxFlushMillis) {
+            this.flushes = flushes;
+            this.rows = rows;
+            this.maxBatchSize = maxBatchSize;
+            this.totalFlushMillis = totalFlushMillis;
+            this.maxFlushMillis = maxFlushMillis;
+        }
+
+        public double getAverageBatchSize() {
+            return flushes == 0 ? 0 : (double) rows / flushes;
+        }
+
+        public double getAverageFlushMillis() {
+            return flushes == 0 ? 0 : (double) totalFlushMillis / flushes;
+        }
+    }
+
+    private static final class Pending {
+        private final UrlCheck urlCheck;
+        private final CompletableFuture<UrlCheck> future = new CompletableFuture<>();
+
+        Pending(UrlCheck urlCheck) {
+            this.urlCheck = urlCheck;
+        }
+    }
+
+    private final BlockingQueue<Pending> buffer;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final Thread flusher;
+    private volatile boolean running = true;
+    // Отправители берут блокировку на чтение, закрытие на запись: после закрытия в буфер ничего не попадет.
+    // Не synchronized: отправитель ждет места в буфере под блокировкой, а это прикрепило бы виртуальный поток
+    private final ReentrantReadWriteLock accepting = new ReentrantReadWriteLock();
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+    private final LongAdder totalFlushMillis = new LongAdder();
+    private final LongAccumulator maxFlushMillis = new LongAccumulator(Math::max, 0);
+
+    public CheckWriter(int batchSize, long maxDelayMillis, int capacity) {
+        this.buffer = new LinkedBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.flusher = Thread.ofVirtual().name("check-writer").start(this::run);
+    }
+
+    /**
+     * Buffers the check for the next batch. Blocks while the buffer is full,
+     * which pushes back on producers when the database falls behind.
+     */
+    public CompletableFuture<UrlCheck> submit(UrlCheck urlCheck) {
+        var pending = new Pending(urlCheck);
+        accepting.readLock().lock();
+        try {
+            if (!running) {
+                return CompletableFuture.failedFuture(closed());
+            }
+            // Поток записи блокировку не берет и освобождает место, пока отправитель ждет
+            buffer.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            accepting.readLock().unlock();
+        }
+        return pending.future;
+    }
+
+    public Stats getStats() {
+        return new Stats(flushes.sum(), rows.sum(), maxBatchSize.get(), totalFlushMillis.sum(), maxFlushMillis.get());
+    }
+
+    /**
+     * Stops accepting checks and waits until everything buffered has been written.
+     */
+    public void close() {
+        // Дожидаемся отправителей, уже кладущих проверку в буфер; новые после этого получат отказ
+        accepting.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            accepting.writeLock().unlock();
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Поток записи прервали до того, как он опустошил буфер: дописываем остаток сами
+        var rest = new ArrayList<Pending>();
+        buffer.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+        // Ни одно ожидание не должно зависнуть, даже если запись выше не удалась
+        rest.forEach(pending -> pending.future.completeExceptionally(closed()));
+    }
+
+    private static IllegalStateException closed() {
+        return new IllegalStateException("Check writer is closed");
+    }
+
+    private void run() {
+        var batch = new ArrayList<Pending>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                // Прервали поток записи: больше не ждем, но дописываем все, что уже в буфере
+                running = false;
+                buffer.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<Pending> batch) throws InterruptedException {
+        var first = buffer.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < batchSize) {
+            if (buffer.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            var next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        var urlChecks = batch.stream().map(pending -> pending.urlCheck).toList();
+        long startedAt = System.nanoTime();
+        int stored = batch.size();
+        try {
+            UrlCheckRepository.saveAll(urlChecks);
+            batch.forEach(pending -> pending.future.complete(pending.urlCheck));
+        } catch (Exception e) {
+            log.warn("Failed to write a batch of {} checks, writing them one by one", batch.size(), e);
+            stored = saveOneByOne(batch);
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        flushes.increment();
+        rows.add(stored);
+        maxBatchSize.accumulate(batch.size());
+        totalFlushMillis.add(elapsedMillis);
+        maxFlushMillis.accumulate(elapsedMillis);
+        log.debug("Flushed {} checks in {} ms", batch.size(), elapsedMillis);
+    }
+
+    // Пачка откатилась целиком; построчная запись отсекает только ту проверку, которую отвергла БД
+    private int saveOneByOne(List<Pending> batch) {
+        int stored = 0;
+        for (var pending : batch) {
+            pending.urlCheck.setId(null);
+            try {
+                UrlCheckRepository.save(pending.urlCheck);
+                pending.future.complete(pending.urlCheck);
+                stored++;
+            } catch (Exception e) {
+                log.error("Failed to write check of url {}", pending.urlCheck.getUrlId(), e);
+                pending.future.completeExceptionally(e);
+            }
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,104 @@
+package hexlet.code.service;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker per host. After {@code failureThreshold} failures in a row
+ * (timeouts, connection errors, 5xx responses) the host's circuit opens and
+ * fetches fail at once for {@code openFor}. Then one trial fetch is let through:
+ * success closes the circuit, failure opens it again.
+ */
+public final class HostCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @Getter
+    public static final class Circuit {
+        private final State state;
+        private final int failures;
+        private final LocalDateTime openUntil;
+
+        private Circuit(State state, int failures, LocalDateTime openUntil) {
+            this.state = state;
+            this.failures = failures;
+            this.openUntil = openUntil;
+        }
+    }
+
+    /**
+     * Thrown instead of fetching while the host's circuit is open.
+     */
+    public static final class OpenCircuitException extends IOException {
+        public OpenCircuitException(String host, LocalDateTime openUntil) {
+            super("Host " + host + " is failing, checks are paused until " + openUntil.withNano(0));
+        }
+    }
+
+    private static final Circuit CLOSED = new Circuit(State.CLOSED, 0, null);
+
+    private final int failureThreshold;
+    private final Duration openFor;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    public HostCircuitBreaker(int failureThreshold, Duration openFor) {
+        this.failureThreshold = failureThreshold;
+        this.openFor = openFor;
+    }
+
+    /**
+     * Lets a fetch to the host through, or throws while its circuit is open.
+     * Once the open period is over, only the first caller gets through as the trial.
+     */
+    public void acquire(String host) throws OpenCircuitException {
+        var now = LocalDateTime.now();
+        var admitted = new boolean[1];
+        var circuit = circuits.computeIfPresent(host, (key, current) -> {
+            if (current.state == State.CLOSED) {
+                admitted[0] = true;
+                return current;
+            }
+            // Пока пробный запрос не вернулся, остальные отбиваются; пропавший пробный запрос не держит цепь вечно
+            if (!now.isBefore(current.openUntil)) {
+                admitted[0] = true;
+                return new Circuit(State.HALF_OPEN, current.failures, now.plus(openFor));
+            }
+            return current;
+        });
+        if (circuit != null && !admitted[0]) {
+            throw new OpenCircuitException(host, circuit.openUntil);
+        }
+    }
+
+    public void onSuccess(String host) {
+        circuits.remove(host);
+    }
+
+    public void onFailure(String host) {
+        var now = LocalDateTime.now();
+        circuits.compute(host, (key, circuit) -> {
+            int failures = (circuit != null ? circuit.failures : 0) + 1;
+            boolean trialFailed = circuit != null && circuit.state == State.HALF_OPEN;
+            if (trialFailed || failures >= failureThreshold) {
+                return new Circuit(State.OPEN, failures, now.plus(openFor));
+            }
+            return new Circuit(State.CLOSED, failures, null);
+        });
+    }
+
+    public Circuit stateOf(String host) {
+        return Optional.ofNullable(circuits.get(host)).orElse(CLOSED);
+    }
+
+    public long countOpen() {
+        return circuits.values().stream().filter(circuit -> circuit.state != State.CLOSED).count();
+    }
+}
@@ -0,0 +1,76 @@
+package hexlet.code.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token bucket per host: each host gets {@code burst} requests at once and then
+ * {@code ratePerSecond} on average. A request that finds the bucket empty books
+ * the next free token and is told how long to wait for it, so callers queue in
+ * arrival order instead of polling.
+ */
+public final class HostRateLimiter {
+
+    /**
+     * Thrown instead of fetching when the host's queue is longer than the caller may wait.
+     */
+    public static final class RateLimitedException extends IOException {
+        public RateLimitedException(String host) {
+            super("Too many checks of host " + host + ", try again later");
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilledAt;
+
+        Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+    }
+
+    private final double ratePerNano;
+    private final double burst;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public HostRateLimiter(double ratePerSecond, int burst) {
+        this.ratePerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+    }
+
+    /**
+     * Takes a token for the host.
+     *
+     * @return how long the caller has to wait before sending; zero when a token was available,
+     *         or null when the wait would exceed {@code maxWait} (nothing is booked then)
+     */
+    public Duration reserve(String host, Duration maxWait) {
+        long now = System.nanoTime();
+        var wait = new long[1];
+        var granted = new boolean[1];
+        buckets.compute(host, (key, bucket) -> {
+            if (bucket == null) {
+                bucket = new Bucket(burst, now);
+            }
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.refilledAt) * ratePerNano);
+            bucket.refilledAt = now;
+
+            // Недостающую часть токена покрываем ожиданием; отрицательный остаток и есть очередь
+            long needed = bucket.tokens >= 1 ? 0 : (long) Math.ceil((1 - bucket.tokens) / ratePerNano);
+            if (needed <= maxWait.toNanos()) {
+                bucket.tokens -= 1;
+                wait[0] = needed;
+                granted[0] = true;
+            }
+            return bucket;
+        });
+        return granted[0] ? Duration.ofNanos(wait[0]) : null;
+    }
+
+    public int getHostCount() {
+        return buckets.size();
+    }
+}
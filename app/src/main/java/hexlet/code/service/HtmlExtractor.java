@@ -0,0 +1,131 @@
+package hexlet.code.service;
+
+import lombok.Getter;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Pulls the title, first h1 and meta description out of a page without
+ * building its whole DOM. The body is read as a stream capped at a fixed
+ * number of bytes, and parsing stops as soon as all three fields are found.
+ */
+public final class HtmlExtractor {
+
+    @Getter
+    public static final class Result {
+        private final String title;
+        private final String h1;
+        private final String description;
+        private final boolean truncated;
+
+        Result(String title, String h1, String description, boolean truncated) {
+            this.title = title;
+            this.h1 = h1;
+            this.description = description;
+            this.truncated = truncated;
+        }
+    }
+
+    private HtmlExtractor() {
+    }
+
+    public static Result extract(InputStream body, Charset charset, long maxBytes) throws IOException {
+        var limited = new LimitedInputStream(body, maxBytes);
+        String title = null;
+        String h1 = null;
+        String description = null;
+
+        try (var parser = new StreamParser(Parser.htmlParser())
+                .parse(new InputStreamReader(limited, charset), "")) {
+            var elements = parser.iterator();
+            while ((title == null || h1 == null || description == null) && elements.hasNext()) {
+                Element element = elements.next();
+                switch (element.normalName()) {
+                    case "title" -> title = title == null ? element.text() : title;
+                    case "h1" -> h1 = h1 == null ? element.text() : h1;
+                    case "meta" -> {
+                        if (description == null && "description".equalsIgnoreCase(element.attr("name"))) {
+                            description = element.attr("content");
+                        }
+                    }
+                    default -> {
+                    }
+                }
+                // Completed elements are dropped to keep the tree small, except the
+                // content of an h1 that is still open and whose text we need later
+                var parent = element.parent();
+                if (h1 != null || parent == null || parent.closest("h1") == null) {
+                    element.remove();
+                }
+            }
+            parser.stop();
+        }
+
+        return new Result(
+                title != null ? title : "",
+                h1 != null ? h1 : "",
+                description != null ? description : "",
+                limited.isTruncated());
+    }
+
+    /**
+     * Returns end of stream once the cap is reached and remembers whether the body had more data.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+        private boolean truncated;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.remaining = maxBytes;
+        }
+
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (isExhausted()) {
+                return -1;
+            }
+            int value = super.read();
+            if (value != -1) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (isExhausted()) {
+                return -1;
+            }
+            int count = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (count > 0) {
+                remaining -= count;
+            }
+            return count;
+        }
+
+        private boolean isExhausted() throws IOException {
+            if (remaining > 0) {
+                return false;
+            }
+            if (!truncated && super.read() != -1) {
+                truncated = true;
+            }
+            return true;
+        }
+    }
+}
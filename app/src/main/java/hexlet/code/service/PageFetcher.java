@@ -0,0 +1,415 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.UrlCheck;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Outbound HTTP client for page checks, built on the JDK HttpClient so that
+ * connections are pooled and multiplexed over HTTP/2 where the origin supports it.
+ * Bodies are read only up to a fixed cap. Re-checks are conditional: the previous
+ * check's validators are sent along, and when the origin answers 304 or the body
+ * hash is unchanged, the previous title/h1/description are reused without parsing.
+ * Every fetch has a connect timeout and a deadline for the whole response, waits
+ * for its host's rate limit and is refused at once while the host's circuit is open.
+ * Each response carries its timing: time to the response headers, body download,
+ * parse time and body size.
+ *
+ * <p>Memory: a fetch in flight holds its body in one array of at most
+ * {@code maxBodyBytes} (1 MiB by default), sized from Content-Length when the
+ * origin sends it, otherwise grown by doubling, which briefly needs 1.5 times the
+ * array. The body is hashed while it arrives and parsed in place, without copies,
+ * so with the default cap and 64 concurrent bulk checks bodies take up to about
+ * 64 MiB, plus the parse state of the pages being extracted.
+ */
+public final class PageFetcher {
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_SERVER_ERROR = 500;
+    // Длины столбцов url_checks.etag и url_checks.last_modified; более длинные значения не сохраняем
+    private static final int MAX_ETAG_LENGTH = 255;
+    private static final int MAX_LAST_MODIFIED_LENGTH = 64;
+
+    private static final Histogram FETCH_TIMER = Metrics.histogram("check_fetch_duration_seconds",
+            "Time to fetch a checked page, from sending the request to reading the body");
+    private static final Histogram PARSE_TIMER = Metrics.histogram("check_parse_duration_seconds",
+            "Time to extract title, h1 and description from a page");
+    private static final Counter FETCH_ERRORS = Metrics.counter("check_fetch_errors_total",
+            "Page fetches that failed without an HTTP response");
+    private static final Counter RATE_LIMITED = Metrics.counter("check_fetch_rate_limited_total",
+            "Page fetches refused because the host's rate limit would delay them too long");
+    private static final Counter SHORT_CIRCUITED = Metrics.counter("check_fetch_short_circuited_total",
+            "Page fetches refused because the host's circuit is open");
+
+    @Getter
+    public static final class PageResponse {
+        private final int statusCode;
+        private final HtmlExtractor.Result page;
+        private final String etag;
+        private final String lastModified;
+        private final String bodyHash;
+        private final boolean unchanged;
+        private final Timing timing;
+
+        PageResponse(int statusCode, HtmlExtractor.Result page, String etag, String lastModified,
+                     String bodyHash, boolean unchanged, Timing timing) {
+            this.statusCode = statusCode;
+            this.page = page;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.bodyHash = bodyHash;
+            this.unchanged = unchanged;
+            this.timing = timing;
+        }
+    }
+
+    /**
+     * Where the time of one fetch went. {@code ttfbMillis} runs from sending the request
+     * to the final response's headers, so it includes connecting, TLS and redirects;
+     * {@code parseMillis} is 0 when the previous check was reused without parsing.
+     */
+    public record Timing(int ttfbMillis, int downloadMillis, int parseMillis, int responseBytes) {
+    }
+
+    /**
+     * Body read up to the size cap: the first {@code length} bytes of {@code buffer}
+     * and their SHA-256; {@code truncated} when the page was longer. The timestamps
+     * are System.nanoTime() values of sending, headers and body end.
+     */
+    private record CappedBody(byte[] buffer, int length, String hash, boolean truncated,
+                              long sentAt, long headersAt, long completedAt) {
+    }
+
+    private final HttpClient client;
+    private final Duration readTimeout;
+    private final long maxBodyBytes;
+    private final HostRateLimiter rateLimiter;
+    private final HostCircuitBreaker circuitBreaker;
+
+    /**
+     * @param connectTimeout limit for opening a connection to the site
+     * @param readTimeout    limit for the whole response, headers and body, once the request is sent
+     */
+    public PageFetcher(Duration connectTimeout, Duration readTimeout, long maxBodyBytes,
+                       HostRateLimiter rateLimiter, HostCircuitBreaker circuitBreaker) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        this.readTimeout = readTimeout;
+        this.maxBodyBytes = maxBodyBytes;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @param previous latest stored check of the URL, or null for the first check
+     */
+    public PageResponse fetch(String url, UrlCheck previous) throws IOException, InterruptedException {
+        var response = fetchAsync(url, previous);
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            var cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Same as {@link #fetch}, without blocking: the request waits for the host's rate
+     * limit on a timer and fails at once while the host's circuit is open.
+     */
+    public CompletableFuture<PageResponse> fetchAsync(String url, UrlCheck previous) {
+        long startedAt = System.nanoTime();
+        HttpRequest request;
+        String host;
+        try {
+            request = buildRequest(url, previous);
+            host = hostOf(url);
+            circuitBreaker.acquire(host);
+        } catch (HostCircuitBreaker.OpenCircuitException e) {
+            SHORT_CIRCUITED.increment();
+            return CompletableFuture.failedFuture(e);
+        } catch (IllegalArgumentException e) {
+            FETCH_ERRORS.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        var wait = rateLimiter.reserve(host, readTimeout);
+        if (wait == null) {
+            RATE_LIMITED.increment();
+            return CompletableFuture.failedFuture(new HostRateLimiter.RateLimitedException(host));
+        }
+        var sent = wait.isZero()
+                ? send(request)
+                : CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(
+                        wait.toNanos(), TimeUnit.NANOSECONDS)).thenCompose(ignored -> send(request));
+
+        return sent
+                .thenApply(response -> record(readResponse(response, previous), startedAt))
+                .whenComplete((response, error) -> {
+                    // Таймауты, обрывы соединения и ответы 5xx считаются отказами хоста
+                    if (error != null) {
+                        FETCH_ERRORS.increment();
+                        circuitBreaker.onFailure(host);
+                    } else if (response.getStatusCode() >= HTTP_SERVER_ERROR) {
+                        circuitBreaker.onFailure(host);
+                    } else {
+                        circuitBreaker.onSuccess(host);
+                    }
+                });
+    }
+
+    /**
+     * Host part used to key per-host limits: host and port of the URL.
+     */
+    public static String hostOf(String url) {
+        try {
+            var authority = URI.create(url).getAuthority();
+            return authority != null ? authority : url;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    // Таймаут запроса JDK-клиента покрывает только заголовки, поэтому на весь ответ ставим свой срок
+    private CompletableFuture<HttpResponse<CappedBody>> send(HttpRequest request) {
+        long sentAt = System.nanoTime();
+        var sent = client.sendAsync(request, response -> new CappedBodySubscriber(maxBodyBytes, sentAt,
+                response.headers().firstValueAsLong("Content-Length").orElse(-1)));
+        return sent.copy()
+                .orTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionallyCompose(error -> {
+                    if (error instanceof TimeoutException) {
+                        sent.cancel(true);
+                        return CompletableFuture.failedFuture(new HttpTimeoutException(
+                                "No complete response from " + request.uri() + " within " + readTimeout));
+                    }
+                    return CompletableFuture.failedFuture(error);
+                });
+    }
+
+    private HttpRequest buildRequest(String url, UrlCheck previous) {
+        var builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(readTimeout)
+                .GET();
+        if (previous != null && previous.getEtag() != null) {
+            builder.header("If-None-Match", previous.getEtag());
+        }
+        if (previous != null && previous.getLastModified() != null) {
+            builder.header("If-Modified-Since", previous.getLastModified());
+        }
+        return builder.build();
+    }
+
+    private PageResponse readResponse(HttpResponse<CappedBody> response, UrlCheck previous) {
+        var headers = response.headers();
+        var etag = validator(headers, "ETag", MAX_ETAG_LENGTH);
+        var lastModified = validator(headers, "Last-Modified", MAX_LAST_MODIFIED_LENGTH);
+
+        var body = response.body();
+
+        if (response.statusCode() == HTTP_NOT_MODIFIED && previous != null) {
+            return new PageResponse(response.statusCode(), reuse(previous),
+                    etag != null ? etag : previous.getEtag(),
+                    lastModified != null ? lastModified : previous.getLastModified(),
+                    previous.getBodyHash(), true, timing(body, 0));
+        }
+
+        // Хеш посчитан по мере чтения тела: по нему решаем, парсить ли страницу
+        var bodyHash = body.hash();
+
+        if (previous != null && bodyHash.equals(previous.getBodyHash())) {
+            return new PageResponse(response.statusCode(), reuse(previous), etag, lastModified, bodyHash, true,
+                    timing(body, 0));
+        }
+
+        HtmlExtractor.Result extracted;
+        long parseStartedAt = System.nanoTime();
+        try {
+            extracted = HtmlExtractor.extract(new ByteArrayInputStream(body.buffer(), 0, body.length()),
+                    charsetOf(headers), body.length());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long parseNanos = System.nanoTime() - parseStartedAt;
+        PARSE_TIMER.observeNanos(parseNanos);
+
+        var page = new HtmlExtractor.Result(extracted.getTitle(), extracted.getH1(), extracted.getDescription(),
+                body.truncated());
+        return new PageResponse(response.statusCode(), page, etag, lastModified, bodyHash, false,
+                timing(body, parseNanos));
+    }
+
+    private static Timing timing(CappedBody body, long parseNanos) {
+        return new Timing(millis(body.headersAt() - body.sentAt()), millis(body.completedAt() - body.headersAt()),
+                millis(parseNanos), body.length());
+    }
+
+    private static int millis(long nanos) {
+        return (int) Math.min(TimeUnit.NANOSECONDS.toMillis(nanos), Integer.MAX_VALUE);
+    }
+
+    private static PageResponse record(PageResponse response, long startedAt) {
+        FETCH_TIMER.observeNanos(System.nanoTime() - startedAt);
+        Metrics.counter("check_fetch_responses_total", "Responses of checked sites by status code",
+                "status", Integer.toString(response.getStatusCode())).increment();
+        return response;
+    }
+
+    private static HtmlExtractor.Result reuse(UrlCheck previous) {
+        return new HtmlExtractor.Result(previous.getTitle(), previous.getH1(), previous.getDescription(),
+                previous.isTruncated());
+    }
+
+    private static String validator(HttpHeaders headers, String name, int maxLength) {
+        return headers.firstValue(name)
+                .filter(value -> value.length() <= maxLength)
+                .orElse(null);
+    }
+
+    private static Charset charsetOf(HttpHeaders headers) {
+        var contentType = headers.firstValue("Content-Type").orElse("");
+        for (var parameter : contentType.split(";")) {
+            var pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset")) {
+                try {
+                    return Charset.forName(pair[1].trim().replace("\"", ""));
+                } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                    break;
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Collects the body up to the cap and then cancels the download, so an
+     * oversized page never holds the connection longer than needed. Bytes go
+     * straight from the network buffers into one growing array and the digest.
+     */
+    private static final class CappedBodySubscriber implements HttpResponse.BodySubscriber<CappedBody> {
+        private static final int INITIAL_CAPACITY = 16 * 1024;
+
+        private final int cap;
+        private final long sentAt;
+        // Обработчик тела создается, когда пришли заголовки окончательного ответа
+        private final long headersAt = System.nanoTime();
+        private final MessageDigest digest;
+        private final CompletableFuture<CappedBody> result = new CompletableFuture<>();
+        private byte[] buffer;
+        private int length;
+        private Flow.Subscription subscription;
+
+        /**
+         * @param contentLength declared body length, or -1 if unknown
+         */
+        CappedBodySubscriber(long cap, long sentAt, long contentLength) {
+            this.cap = (int) Math.min(cap, Integer.MAX_VALUE - 8);
+            this.sentAt = sentAt;
+            // Content-Length может и соврать, поэтому дальше массив все равно растет по мере надобности
+            this.buffer = new byte[(int) Math.min(contentLength >= 0 ? contentLength : INITIAL_CAPACITY, this.cap)];
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public CompletionStage<CappedBody> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (result.isDone()) {
+                return;
+            }
+            for (var item : items) {
+                int room = Math.min(item.remaining(), cap - length);
+                ensureCapacity(length + room);
+                item.get(buffer, length, room);
+                digest.update(buffer, length, room);
+                length += room;
+                if (item.hasRemaining()) {
+                    subscription.cancel();
+                    complete(true);
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            complete(false);
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed > buffer.length) {
+                int grown = (int) Math.min(Math.max((long) buffer.length * 2, needed), cap);
+                buffer = Arrays.copyOf(buffer, grown);
+            }
+        }
+
+        private void complete(boolean truncated) {
+            result.complete(new CappedBody(buffer, length, HexFormat.of().formatHex(digest.digest()), truncated,
+                    sentAt, headersAt, System.nanoTime()));
+        }
+    }
+}
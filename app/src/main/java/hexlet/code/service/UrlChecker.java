@@ -0,0 +1,176 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.UrlRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks URLs one flight at a time: while a check of a URL is running, other
+ * requests to check it wait for that check and get its result, so the site is
+ * fetched and the check is saved once. A check that finished within the reuse
+ * window is returned as is instead of fetching the site again.
+ */
+@Slf4j
+public final class UrlChecker {
+    // Обновление расписания не должно выполняться в потоке записи проверок
+    private static final Executor RESCHEDULER = Executors.newVirtualThreadPerTaskExecutor();
+    private static final Counter JOINED = Metrics.counter("check_single_flight_joined_total",
+            "Check requests that joined a check of the same URL already in flight");
+    private static final Counter REUSED = Metrics.counter("check_recent_reused_total",
+            "Check requests answered with a check that had just finished");
+
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    private final PageFetcher fetcher;
+    private final CheckWriter writer;
+    private final CheckSchedule schedule;
+    private final Duration reuseWindow;
+
+    private final Map<Long, CompletableFuture<UrlCheck>> inFlight = new ConcurrentHashMap<>();
+    private final Map<Long, UrlCheck> recent = new ConcurrentHashMap<>();
+
+    public UrlChecker(PageFetcher fetcher, CheckWriter writer, CheckSchedule schedule, Duration reuseWindow) {
+        this.fetcher = fetcher;
+        this.writer = writer;
+        this.schedule = schedule;
+        this.reuseWindow = reuseWindow;
+    }
+
+    /**
+     * Fetches the page, extracts its SEO fields and stores the result as a new check.
+     * The previous check used for conditional requests is taken from {@link Url#getLatestCheck()},
+     * so no connection is held while the site responds.
+     */
+    public UrlCheck check(Url url) throws IOException, InterruptedException, ExecutionException {
+        var reused = recentCheck(url.getId());
+        if (reused != null) {
+            return reused;
+        }
+        var own = new CompletableFuture<UrlCheck>();
+        var running = inFlight.putIfAbsent(url.getId(), own);
+        if (running != null) {
+            JOINED.increment();
+            return running.get();
+        }
+
+        try {
+            log.info("Checking URL: {}", url.getName());
+            var urlCheck = toCheck(url, fetcher.fetch(url.getName(), url.getLatestCheck()));
+
+            // Сохраняем проверку пачкой вместе с другими и ждем записи
+            var saved = writer.submit(urlCheck).get();
+            reschedule(url, saved);
+            land(url.getId(), own, saved, null);
+            return saved;
+        } catch (IOException | InterruptedException | ExecutionException | RuntimeException e) {
+            land(url.getId(), own, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #check}, but the request is pipelined on the shared client
+     * and parsing and saving run when the response arrives. The previous check
+     * used for conditional requests is taken from {@link Url#getLatestCheck()}.
+     */
+    public CompletableFuture<UrlCheck> checkAsync(Url url) {
+        var reused = recentCheck(url.getId());
+        if (reused != null) {
+            return CompletableFuture.completedFuture(reused);
+        }
+        var own = new CompletableFuture<UrlCheck>();
+        var running = inFlight.putIfAbsent(url.getId(), own);
+        if (running != null) {
+            JOINED.increment();
+            return running;
+        }
+
+        fetcher.fetchAsync(url.getName(), url.getLatestCheck())
+                .thenCompose(response -> writer.submit(toCheck(url, response)))
+                .thenApplyAsync(saved -> {
+                    reschedule(url, saved);
+                    return saved;
+                }, RESCHEDULER)
+                .whenComplete((saved, error) -> land(url.getId(), own, saved, error));
+        return own;
+    }
+
+    private UrlCheck recentCheck(long urlId) {
+        var check = recent.get(urlId);
+        if (check == null || check.getCreatedAt().isBefore(LocalDateTime.now().minus(reuseWindow))) {
+            return null;
+        }
+        REUSED.increment();
+        return check;
+    }
+
+    // Результат публикуется до снятия полета, чтобы новый запрос застал либо полет, либо свежую проверку
+    private void land(long urlId, CompletableFuture<UrlCheck> flight, UrlCheck saved, Throwable error) {
+        if (error == null && !reuseWindow.isZero()) {
+            recent.put(urlId, saved);
+            CompletableFuture.delayedExecutor(reuseWindow.toMillis(), TimeUnit.MILLISECONDS)
+                    .execute(() -> recent.remove(urlId, saved));
+        }
+        inFlight.remove(urlId, flight);
+        if (error == null) {
+            flight.complete(saved);
+        } else {
+            flight.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error);
+        }
+    }
+
+    // Подстраиваем интервал под то, как часто меняется сайт
+    private void reschedule(Url url, UrlCheck check) {
+        var interval = schedule.nextInterval(schedule.intervalOf(url), url.getLatestCheck(), check);
+        try {
+            UrlRepository.updateSchedule(url.getId(), schedule.nextCheckAt(check.getCreatedAt(), interval), interval);
+        } catch (SQLException e) {
+            log.warn("Failed to reschedule url {}", url.getId(), e);
+        }
+    }
+
+    // Длиннее VARCHAR(255) в url_checks записать нельзя
+    private static String clamp(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    private static UrlCheck toCheck(Url url, PageFetcher.PageResponse response) {
+        var page = response.getPage();
+
+        // Создаем проверку
+        var urlCheck = new UrlCheck();
+        urlCheck.setStatusCode(response.getStatusCode());
+        urlCheck.setTitle(clamp(page.getTitle(), MAX_TEXT_LENGTH));
+        urlCheck.setH1(clamp(page.getH1(), MAX_TEXT_LENGTH));
+        urlCheck.setDescription(page.getDescription());
+        urlCheck.setTruncated(page.isTruncated());
+        urlCheck.setEtag(response.getEtag());
+        urlCheck.setLastModified(response.getLastModified());
+        urlCheck.setBodyHash(response.getBodyHash());
+        var timing = response.getTiming();
+        urlCheck.setTtfbMillis(timing.ttfbMillis());
+        urlCheck.setDownloadMillis(timing.downloadMillis());
+        urlCheck.setParseMillis(timing.parseMillis());
+        urlCheck.setResponseBytes(timing.responseBytes());
+        urlCheck.setUrlId(url.getId());
+        urlCheck.setCreatedAt(LocalDateTime.now());
+        return urlCheck;
+    }
+}
@@ -0,0 +1,108 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.Url;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.utils.UrlNormalizer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Adds URLs from a text or CSV upload, one URL per line or in the first column.
+ * The input is read line by line and written in batches that skip names already
+ * stored, so memory use depends on the batch size, not on the file size.
+ * Duplicates inside one batch are dropped before the insert; duplicates across
+ * batches are caught by the unique index on the name.
+ */
+@Slf4j
+public final class UrlImporter {
+    private static final Counter IMPORTED = Metrics.counter("url_import_added_total", "URLs added by bulk import");
+    private static final Set<String> HEADERS = Set.of("url", "urls", "name", "site");
+
+    @Getter
+    public static final class Result {
+        private long added;
+        private long duplicates;
+        private long invalid;
+    }
+
+    private final int batchSize;
+
+    public UrlImporter(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Result importFrom(InputStream input) throws IOException, SQLException {
+        var result = new Result();
+        var batch = new LinkedHashSet<String>();
+        long startedAt = System.nanoTime();
+
+        var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        boolean firstLine = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            var value = firstColumn(firstLine ? stripBom(line) : line);
+            boolean header = firstLine && HEADERS.contains(value.toLowerCase(Locale.ROOT));
+            firstLine = false;
+            if (value.isEmpty() || header) {
+                continue;
+            }
+
+            var name = UrlNormalizer.normalize(value);
+            if (name.isEmpty()) {
+                result.invalid++;
+            } else if (!batch.add(name.get())) {
+                result.duplicates++;
+            } else if (batch.size() >= batchSize) {
+                flush(batch, result);
+            }
+        }
+        flush(batch, result);
+
+        log.info("Imported URLs in {} ms: {} added, {} duplicates, {} invalid",
+                (System.nanoTime() - startedAt) / 1_000_000, result.added, result.duplicates, result.invalid);
+        return result;
+    }
+
+    private void flush(Set<String> batch, Result result) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        var urls = new ArrayList<Url>(batch.size());
+        for (var name : batch) {
+            urls.add(new Url(name));
+        }
+        int added = UrlRepository.saveAllIgnoringDuplicates(urls).size();
+        result.added += added;
+        result.duplicates += batch.size() - added;
+        IMPORTED.add(added);
+        batch.clear();
+    }
+
+    // Первое поле CSV-строки, с учетом кавычек; для простого списка это вся строка
+    private static String firstColumn(String line) {
+        var trimmed = line.trim();
+        if (trimmed.startsWith("\"")) {
+            int end = trimmed.indexOf('"', 1);
+            return (end > 0 ? trimmed.substring(1, end) : trimmed.substring(1)).trim();
+        }
+        int comma = trimmed.indexOf(',');
+        return (comma >= 0 ? trimmed.substring(0, comma) : trimmed).trim();
+    }
+
+    private static String stripBom(String line) {
+        return line.startsWith("\uFEFF") ? line.substring(1) : line;
+    }
+}
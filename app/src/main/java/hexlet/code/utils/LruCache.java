@@ -0,0 +1,138 @@
+package hexlet.code.utils;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small bounded cache with least-recently-used eviction and a time-to-live per entry.
+ * All map access is guarded by one lock; values are loaded outside of it, so a slow
+ * load never blocks readers of other keys.
+ */
+public final class LruCache<K, V> {
+
+    @Getter
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+
+        private Stats(long hits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader<K, V, E extends Exception> {
+        V load(K key) throws E;
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long invalidations;
+
+    public LruCache(int maxSize, Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value or loads and caches it. Loaded values must not be null.
+     * A value loaded while an invalidation happened is returned but not cached,
+     * so a concurrent write can never be shadowed by a stale read.
+     */
+    public <E extends Exception> V get(K key, Loader<K, V, E> loader) throws E {
+        long now = System.nanoTime();
+        long generation;
+        lock.lock();
+        try {
+            generation = invalidations;
+            var entry = entries.get(key);
+            if (entry != null && entry.expiresAt - now > 0) {
+                hits.increment();
+                return entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        misses.increment();
+        var value = loader.load(key);
+        lock.lock();
+        try {
+            if (generation == invalidations) {
+                entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return value;
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            invalidations++;
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            invalidations++;
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -15,4 +15,39 @@ public class NamedRoutes {
     public static String urlPathCheck(String id) {
         return "/urls/" + id + "/checks";
     }
+
+    // Путь для проверки всех URL
+    public static String checksPath() {
+        return "/urls/checks";
+    }
+
+    // Путь для импорта списка URL
+    public static String urlsImportPath() {
+        return "/urls/import";
+    }
+
+    // JSON API: список сайтов
+    public static String apiUrlsPath() {
+        return "/api/urls";
+    }
+
+    // JSON API: сайт по ID
+    public static String apiUrlPath(String id) {
+        return "/api/urls/" + id;
+    }
+
+    // JSON API: проверки сайта
+    public static String apiUrlChecksPath(String id) {
+        return "/api/urls/" + id + "/checks";
+    }
+
+    // Выгрузка истории проверок
+    public static String checksExportPath() {
+        return "/api/checks/export";
+    }
+
+    // Метрики в формате Prometheus
+    public static String metricsPath() {
+        return "/metrics";
+    }
 }
@@ -0,0 +1,117 @@
+package hexlet.code.utils;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of rendered HTML pages, stored as UTF-8 bytes. Pages belong to a group
+ * (all URLs, one URL) and a group is invalidated as a whole by bumping its
+ * generation, which makes every stored variant of it unreachable; the LRU then
+ * drops them. Each page is stored
+ * with a pre-compressed gzip copy and a strong ETag for each of the two
+ * representations, and concurrent misses of the same page wait for a single
+ * render instead of rendering it each.
+ */
+public final class PageCache {
+
+    @Getter
+    public static final class Page {
+        private final byte[] body;
+        private final byte[] gzipped;
+        private final String etag;
+        private final String gzippedEtag;
+
+        private Page(byte[] body, byte[] gzipped, String tag) {
+            this.body = body;
+            this.gzipped = gzipped;
+            // Сильный ETag относится к байтам ответа, поэтому у сжатой версии он свой
+            this.etag = "\"" + tag + "\"";
+            this.gzippedEtag = "\"" + tag + "-gz\"";
+        }
+
+        public static Page of(byte[] body) {
+            return new Page(body, gzip(body), tagOf(body));
+        }
+    }
+
+    @FunctionalInterface
+    public interface Renderer<E extends Exception> {
+        byte[] render() throws E;
+    }
+
+    private final LruCache<String, Page> pages;
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Page>> inFlight = new ConcurrentHashMap<>();
+
+    public PageCache(int maxSize, Duration ttl) {
+        this.pages = new LruCache<>(maxSize, ttl);
+    }
+
+    public <E extends Exception> Page get(String group, String variant, Renderer<E> renderer) throws E {
+        String key = group + "#" + generations.getOrDefault(group, 0L) + "|" + variant;
+        return pages.get(key, k -> renderOnce(k, renderer));
+    }
+
+    public void invalidate(String group) {
+        generations.merge(group, 1L, Long::sum);
+    }
+
+    public LruCache.Stats getStats() {
+        return pages.getStats();
+    }
+
+    private <E extends Exception> Page renderOnce(String key, Renderer<E> renderer) throws E {
+        var own = new CompletableFuture<Page>();
+        var running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                // Рендер, которого мы ждали, упал; пробуем сами, чтобы вернуть свою ошибку
+                return Page.of(renderer.render());
+            }
+        }
+
+        try {
+            var page = Page.of(renderer.render());
+            own.complete(page);
+            return page;
+        } catch (Exception e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) {
+        var out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String tagOf(byte[] body) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package hexlet.code.utils;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Optional;
+
+public class UrlNormalizer {
+
+    /**
+     * Reduces a user-supplied address to protocol, host and a non-default port,
+     * the form URLs are stored in; empty when the input is not a valid URL.
+     */
+    public static Optional<String> normalize(String input) {
+        if (input == null || input.isBlank()) {
+            return Optional.empty();
+        }
+
+        try {
+            URL url = new URI(input.trim()).toURL();
+            if (url.getHost() == null || url.getHost().isEmpty()) {
+                return Optional.empty();
+            }
+            String normalizedUrl = url.getProtocol() + "://" + url.getHost();
+
+            // Добавляем порт, если он указан и не стандартный
+            if (url.getPort() != -1
+                    && !((url.getProtocol().equals("http") && url.getPort() == 80)
+                    || (url.getProtocol().equals("https") && url.getPort() == 443))) {
+                normalizedUrl += ":" + url.getPort();
+            }
+            return Optional.of(normalizedUrl);
+        } catch (MalformedURLException | IllegalArgumentException | URISyntaxException e) {
+            return Optional.empty();
+        }
+    }
+}
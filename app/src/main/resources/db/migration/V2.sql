@@ -0,0 +1,12 @@
+-- Scheduling, conditional re-checks and keyset paging.
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS next_check_at TIMESTAMP;
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS check_interval_seconds BIGINT;
+
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS truncated BOOLEAN DEFAULT FALSE NOT NULL;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS etag VARCHAR(255);
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS last_modified VARCHAR(64);
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS body_hash VARCHAR(64);
+
+CREATE INDEX IF NOT EXISTS ix_url_check_url_id_created_at ON url_checks (url_id, created_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS ix_url_created_at ON urls (created_at, id);
+CREATE INDEX IF NOT EXISTS ix_url_next_check_at ON urls (next_check_at);
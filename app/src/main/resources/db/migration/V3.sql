@@ -0,0 +1,18 @@
+-- Daily rollup of checks older than the retention window.
+CREATE TABLE IF NOT EXISTS url_check_daily (
+url_id BIGINT NOT NULL,
+check_day DATE NOT NULL,
+checks_count INTEGER NOT NULL,
+status_2xx INTEGER NOT NULL,
+status_3xx INTEGER NOT NULL,
+status_4xx INTEGER NOT NULL,
+status_5xx INTEGER NOT NULL,
+first_title VARCHAR(255),
+last_title VARCHAR(255),
+first_checked_at TIMESTAMP NOT NULL,
+last_checked_at TIMESTAMP NOT NULL,
+CONSTRAINT pk_url_check_daily PRIMARY KEY (url_id, check_day),
+CONSTRAINT fk_url_check_daily_url_id FOREIGN KEY (url_id) REFERENCES urls (id) ON DELETE RESTRICT ON UPDATE RESTRICT
+);
+
+CREATE INDEX IF NOT EXISTS ix_url_check_created_at ON url_checks (created_at, id);
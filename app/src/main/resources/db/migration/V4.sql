@@ -0,0 +1,83 @@
+-- One row per site. Before this index two concurrent submits could both insert the same name,
+-- so existing duplicates are merged into the oldest row first, together with their checks and daily history.
+DROP TABLE IF EXISTS url_name_merge;
+CREATE TABLE url_name_merge (
+dup_id BIGINT PRIMARY KEY,
+kept_id BIGINT NOT NULL
+);
+
+INSERT INTO url_name_merge (dup_id, kept_id)
+SELECT d.id, (SELECT MIN(k.id) FROM urls k WHERE k.name = d.name)
+FROM urls d
+WHERE EXISTS (SELECT 1 FROM urls k WHERE k.name = d.name AND k.id < d.id);
+
+UPDATE url_checks SET url_id = (SELECT m.kept_id FROM url_name_merge m WHERE m.dup_id = url_checks.url_id)
+WHERE url_id IN (SELECT dup_id FROM url_name_merge);
+
+-- Days the kept site already has: add the duplicates' counts and widen the first/last range
+UPDATE url_check_daily SET
+    checks_count = checks_count + (SELECT SUM(o.checks_count) FROM url_check_daily o
+        JOIN url_name_merge m ON m.dup_id = o.url_id
+        WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day),
+    status_2xx = status_2xx + (SELECT SUM(o.status_2xx) FROM url_check_daily o
+        JOIN url_name_merge m ON m.dup_id = o.url_id
+        WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day),
+    status_3xx = status_3xx + (SELECT SUM(o.status_3xx) FROM url_check_daily o
+        JOIN url_name_merge m ON m.dup_id = o.url_id
+        WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day),
+    status_4xx = status_4xx + (SELECT SUM(o.status_4xx) FROM url_check_daily o
+        JOIN url_name_merge m ON m.dup_id = o.url_id
+        WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day),
+    status_5xx = status_5xx + (SELECT SUM(o.status_5xx) FROM url_check_daily o
+        JOIN url_name_merge m ON m.dup_id = o.url_id
+        WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day),
+    first_title = CASE WHEN EXISTS (SELECT 1 FROM url_check_daily o
+            JOIN url_name_merge m ON m.dup_id = o.url_id
+            WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day
+            AND o.first_checked_at < url_check_daily.first_checked_at)
+        THEN (SELECT o.first_title FROM url_check_daily o
+            JOIN url_name_merge m ON m.dup_id = o.url_id
+            WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day
+            ORDER BY o.first_checked_at LIMIT 1)
+        ELSE first_title END,
+    last_title = CASE WHEN EXISTS (SELECT 1 FROM url_check_daily o
+            JOIN url_name_merge m ON m.dup_id = o.url_id
+            WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day
+            AND o.last_checked_at > url_check_daily.last_checked_at)
+        THEN (SELECT o.last_title FROM url_check_daily o
+            JOIN url_name_merge m ON m.dup_id = o.url_id
+            WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day
+            ORDER BY o.last_checked_at DESC LIMIT 1)
+        ELSE last_title END,
+    first_checked_at = LEAST(first_checked_at, (SELECT MIN(o.first_checked_at) FROM url_check_daily o
+        JOIN url_name_merge m ON m.dup_id = o.url_id
+        WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day)),
+    last_checked_at = GREATEST(last_checked_at, (SELECT MAX(o.last_checked_at) FROM url_check_daily o
+        JOIN url_name_merge m ON m.dup_id = o.url_id
+        WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day))
+WHERE EXISTS (SELECT 1 FROM url_check_daily o
+    JOIN url_name_merge m ON m.dup_id = o.url_id
+    WHERE m.kept_id = url_check_daily.url_id AND o.check_day = url_check_daily.check_day);
+
+-- Days only the duplicates have: one summed row per kept site and day
+INSERT INTO url_check_daily (url_id, check_day, checks_count, status_2xx, status_3xx, status_4xx, status_5xx,
+    first_title, last_title, first_checked_at, last_checked_at)
+SELECT m.kept_id, o.check_day, SUM(o.checks_count), SUM(o.status_2xx), SUM(o.status_3xx), SUM(o.status_4xx),
+    SUM(o.status_5xx),
+    (SELECT f.first_title FROM url_check_daily f JOIN url_name_merge fm ON fm.dup_id = f.url_id
+        WHERE fm.kept_id = m.kept_id AND f.check_day = o.check_day ORDER BY f.first_checked_at LIMIT 1),
+    (SELECT l.last_title FROM url_check_daily l JOIN url_name_merge lm ON lm.dup_id = l.url_id
+        WHERE lm.kept_id = m.kept_id AND l.check_day = o.check_day ORDER BY l.last_checked_at DESC LIMIT 1),
+    MIN(o.first_checked_at), MAX(o.last_checked_at)
+FROM url_check_daily o
+JOIN url_name_merge m ON m.dup_id = o.url_id
+WHERE NOT EXISTS (SELECT 1 FROM url_check_daily e WHERE e.url_id = m.kept_id AND e.check_day = o.check_day)
+GROUP BY m.kept_id, o.check_day;
+
+DELETE FROM url_check_daily WHERE url_id IN (SELECT dup_id FROM url_name_merge);
+
+DELETE FROM urls WHERE id IN (SELECT dup_id FROM url_name_merge);
+
+DROP TABLE url_name_merge;
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_url_name ON urls (name);
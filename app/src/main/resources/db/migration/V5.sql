@@ -0,0 +1,6 @@
+-- Timing of each check, in milliseconds, and the number of body bytes read.
+-- Checks made before this version have no timing and keep NULL.
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS ttfb_ms INTEGER;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS download_ms INTEGER;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS parse_ms INTEGER;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS response_bytes INTEGER;
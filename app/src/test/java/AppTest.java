@@ -1,30 +1,71 @@
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import hexlet.code.App;
+import hexlet.code.controller.UrlCheckController;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.metrics.PinningMonitor;
 import hexlet.code.model.Url;
 import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.BaseRepository;
+import hexlet.code.repository.Migrations;
+import hexlet.code.repository.PageRequest;
+import hexlet.code.repository.UnitOfWork;
+import hexlet.code.repository.UrlCheckDailyRepository;
 import hexlet.code.repository.UrlCheckRepository;
 import hexlet.code.repository.UrlRepository;
+import hexlet.code.search.UrlSearchIndex;
+import hexlet.code.service.BulkChecker;
+import hexlet.code.service.CheckQueue;
+import hexlet.code.service.CheckRetention;
+import hexlet.code.service.CheckSchedule;
+import hexlet.code.service.CheckScheduler;
+import hexlet.code.service.CheckWriter;
+import hexlet.code.service.HostCircuitBreaker;
+import hexlet.code.service.HostRateLimiter;
+import hexlet.code.service.HtmlExtractor;
+import hexlet.code.service.PageFetcher;
+import hexlet.code.service.UrlChecker;
 
 import io.javalin.Javalin;
 import io.javalin.testtools.JavalinTest;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import utils.TestUtils;
 
 public final class AppTest {
+    private static final Duration CHECK_REUSE_WINDOW = Duration.ofSeconds(2);
 
     private Javalin app;
     private static MockWebServer mockWebServer;
@@ -39,19 +80,38 @@ public final class AppTest {
         return Files.readString(filePath).trim();
     }
 
+    private static List<UrlCheck> awaitChecks(long urlId) throws SQLException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        List<UrlCheck> checks = UrlCheckRepository.findByUrlId(urlId);
+        while (checks.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            checks = UrlCheckRepository.findByUrlId(urlId);
+        }
+        return checks;
+    }
+
+    private static void awaitCheckFinished(long urlId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (UrlCheckController.checkQueue.getState(urlId).map(state -> state.isActive()).orElse(true)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
     @BeforeAll
     public static void beforeAll() throws IOException {
         mockWebServer = new MockWebServer();
 
-        // Настраиваем ответ для любого пути
-        MockResponse mockedResponse = new MockResponse()
-                .setBody(readFixture("index.html"))
-                .setResponseCode(200);
-
-        // Добавляем несколько ответов на случай multiple requests
-        mockWebServer.enqueue(mockedResponse);
-        mockWebServer.enqueue(mockedResponse);
-        mockWebServer.enqueue(mockedResponse);
+        // Отдаем фикстуру на любой запрос, сколько бы проверок ни выполнили тесты
+        String fixture = readFixture("index.html");
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setBody(fixture)
+                        .setResponseCode(200);
+            }
+        });
 
         mockWebServer.start();
     }
@@ -64,6 +124,7 @@ public final class AppTest {
     @BeforeEach
     public void setUp() throws IOException, SQLException {
         app = App.getApp();
+        TestUtils.cleanDatabase(BaseRepository.dataSource);
     }
 
     @Test
@@ -89,6 +150,71 @@ public final class AppTest {
         });
     }
 
+    @Test
+    public void testUrlsPageLoadsLatestChecksInSingleQuery() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            Url url = new Url("https://site" + i + ".example.com");
+            UrlRepository.save(url);
+            TestUtils.addUrlCheck(BaseRepository.dataSource, url.getId());
+        }
+
+        var originalDataSource = BaseRepository.dataSource;
+        try (var countingDataSource = new TestUtils.QueryCountingDataSource(originalDataSource.getJdbcUrl())) {
+            BaseRepository.dataSource = countingDataSource;
+            JavalinTest.test(app, (server, client) -> {
+                var response = client.get("/urls");
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.body().string())
+                        .contains("https://site0.example.com")
+                        .contains("https://site4.example.com")
+                        .contains("27/09/2021 14:20");
+            });
+            assertThat(countingDataSource.getQueryCount()).isEqualTo(1);
+        } finally {
+            BaseRepository.dataSource = originalDataSource;
+        }
+    }
+
+    @Test
+    public void testUrlsPagination() throws SQLException {
+        var base = LocalDateTime.of(2024, 1, 1, 12, 0);
+        for (int i = 0; i < 30; i++) {
+            Url url = new Url("https://page" + i + ".example.com");
+            url.setCreatedAt(base.plusMinutes(i));
+            UrlRepository.save(url);
+        }
+
+        var firstPage = UrlRepository.findPageWithLatestChecks(PageRequest.first(25));
+        assertThat(firstPage.getItems()).hasSize(25);
+        assertThat(firstPage.getItems().getFirst().getName()).isEqualTo("https://page29.example.com");
+        assertThat(firstPage.getPrevCursor()).isNull();
+        assertThat(firstPage.getNextCursor()).isNotNull();
+
+        var secondPage = UrlRepository.findPageWithLatestChecks(
+                PageRequest.of(firstPage.getNextCursor(), null, 25));
+        assertThat(secondPage.getItems()).extracting(Url::getName)
+                .containsExactly("https://page4.example.com", "https://page3.example.com",
+                        "https://page2.example.com", "https://page1.example.com", "https://page0.example.com");
+        assertThat(secondPage.getNextCursor()).isNull();
+
+        var backToFirst = UrlRepository.findPageWithLatestChecks(
+                PageRequest.of(null, secondPage.getPrevCursor(), 25));
+        assertThat(backToFirst.getItems()).extracting(Url::getName)
+                .containsExactlyElementsOf(firstPage.getItems().stream().map(Url::getName).toList());
+        assertThat(backToFirst.getPrevCursor()).isNull();
+
+        JavalinTest.test(app, (server, client) -> {
+            String body = client.get("/urls").body().string();
+            assertThat(body).contains("https://page29.example.com").doesNotContain("https://page4.example.com");
+
+            var matcher = Pattern.compile("after=([A-Za-z0-9_-]+)").matcher(body);
+            assertThat(matcher.find()).isTrue();
+
+            String nextBody = client.get("/urls?after=" + matcher.group(1)).body().string();
+            assertThat(nextBody).contains("https://page4.example.com").contains("before=");
+        });
+    }
+
     @Test
     public void testShowPage() throws SQLException {
         Url url = new Url("https://www.example.com");
@@ -261,7 +387,7 @@ public final class AppTest {
                     .isEqualTo(200);
 
             // Проверяем что проверка создана с правильными данными
-            List<UrlCheck> checks = UrlCheckRepository.findByUrlId(actualUrl.getId());
+            List<UrlCheck> checks = awaitChecks(actualUrl.getId());
             assertThat(checks).isNotEmpty();
 
             UrlCheck actualCheck = checks.getFirst();
@@ -269,6 +395,1084 @@ public final class AppTest {
             assertThat(actualCheck.getTitle()).isEqualTo("Test page");
             assertThat(actualCheck.getH1()).isEqualTo("Do not expect a miracle, miracles yourself!");
             assertThat(actualCheck.getDescription()).isEqualTo("statements of great people");
+
+            assertThat(client.get("/urls/" + actualUrl.getId()).body().string()).contains("Завершена");
+        });
+    }
+
+    @Test
+    void testCheckIsQueuedWithoutBlockingRequest() {
+        String url = mockWebServer.url("/").toString().replaceAll("/$", "");
+
+        JavalinTest.test(app, (server, client) -> {
+            client.post("/urls", "url=" + url);
+            var savedUrl = UrlRepository.findByName(url).orElseThrow();
+
+            var response = client.post("/urls/" + savedUrl.getId() + "/checks");
+            assertThat(response.code()).isEqualTo(200);
+
+            assertThat(awaitChecks(savedUrl.getId())).hasSize(1);
+        });
+    }
+
+    @Test
+    void testBulkCheckCoversAllUrls() {
+        String url = mockWebServer.url("/").toString().replaceAll("/$", "");
+
+        JavalinTest.test(app, (server, client) -> {
+            Url first = new Url(url);
+            UrlRepository.save(first);
+            Url second = new Url(url + "/");
+            UrlRepository.save(second);
+
+            assertThat(client.post("/urls/checks").code()).isEqualTo(200);
+
+            assertThat(awaitChecks(first.getId())).hasSize(1);
+            assertThat(awaitChecks(second.getId())).hasSize(1);
+
+            var progress = UrlCheckController.bulkChecker.getProgress();
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (progress.isRunning() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+                progress = UrlCheckController.bulkChecker.getProgress();
+            }
+            assertThat(progress.isRunning()).isFalse();
+            assertThat(progress.getCompleted()).isEqualTo(2);
+            assertThat(progress.getFailed()).isZero();
+            assertThat(UrlCheckRepository.findLatestCheck(second.getId()).orElseThrow().getTitle())
+                    .isEqualTo("Test page");
+        });
+    }
+
+    @Test
+    void testBulkCheckerShutdownWaitsForSentChecksAndStopsAdmitting() throws Exception {
+        var origin = new MockWebServer();
+        origin.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("<html><title>Slow</title></html>")
+                        .setBodyDelay(300, TimeUnit.MILLISECONDS);
+            }
+        });
+        origin.start();
+        var writer = new CheckWriter(10, 10, 100);
+
+        try {
+            var ids = new ArrayList<Long>();
+            for (int i = 0; i < 5; i++) {
+                Url url = new Url(origin.url("/page" + i).toString());
+                UrlRepository.save(url);
+                ids.add(url.getId());
+            }
+            var schedule = new CheckSchedule(Duration.ofDays(1), Duration.ofHours(1), Duration.ofDays(7), 0.2);
+            var checker = new UrlChecker(new PageFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), 1 << 20,
+                    new HostRateLimiter(100, 100), new HostCircuitBreaker(5, Duration.ofMinutes(1))),
+                    writer, schedule, Duration.ZERO);
+            // Один запрос к хосту за раз: остальные сайты ждут в очереди хоста, когда приходит остановка
+            var bulkChecker = new BulkChecker(checker, 10, 1);
+
+            assertThat(bulkChecker.start()).isTrue();
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (bulkChecker.getProgress().getSubmitted() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            bulkChecker.shutdown(5_000);
+
+            var progress = bulkChecker.getProgress();
+            assertThat(progress.isRunning()).isFalse();
+            assertThat(progress.getCompleted()).isBetween(1, 4);
+            assertThat(bulkChecker.start()).isFalse();
+
+            writer.close();
+            int stored = 0;
+            for (var id : ids) {
+                stored += UrlCheckRepository.findByUrlId(id).size();
+            }
+            assertThat(stored).isEqualTo(progress.getCompleted());
+        } finally {
+            writer.close();
+            origin.shutdown();
+        }
+    }
+
+    @Test
+    void testHtmlExtractorReadsFields() throws IOException {
+        var html = readFixture("index.html").getBytes(StandardCharsets.UTF_8);
+        var result = HtmlExtractor.extract(new ByteArrayInputStream(html), StandardCharsets.UTF_8, 1024 * 1024);
+
+        assertThat(result.getTitle()).isEqualTo("Test page");
+        assertThat(result.getH1()).isEqualTo("Do not expect a miracle, miracles yourself!");
+        assertThat(result.getDescription()).isEqualTo("statements of great people");
+        assertThat(result.isTruncated()).isFalse();
+    }
+
+    @Test
+    void testHtmlExtractorKeepsNestedH1Text() throws IOException {
+        var html = "<html><head><title>T</title></head><body><h1>Hello <b>bold</b> world</h1></body></html>";
+        var result = HtmlExtractor.extract(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8, 1024);
+
+        assertThat(result.getH1()).isEqualTo("Hello bold world");
+        assertThat(result.getDescription()).isEmpty();
+    }
+
+    @Test
+    void testHtmlExtractorStopsAtByteCap() throws IOException {
+        var html = "<html><head><title>Big page</title></head><body><p>" + "x".repeat(10_000)
+                + "</p><h1>Too late</h1></body></html>";
+        var result = HtmlExtractor.extract(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8, 1024);
+
+        assertThat(result.getTitle()).isEqualTo("Big page");
+        assertThat(result.getH1()).isEmpty();
+        assertThat(result.isTruncated()).isTrue();
+    }
+
+    @Test
+    void testCheckWriterBatchesInsertsAndFlushesOnClose() throws SQLException {
+        Url url = new Url("https://batch.example.com");
+        UrlRepository.save(url);
+
+        var writer = new CheckWriter(10, 1_000, 100);
+        var futures = new ArrayList<CompletableFuture<UrlCheck>>();
+        for (int i = 0; i < 25; i++) {
+            var urlCheck = new UrlCheck();
+            urlCheck.setStatusCode(200);
+            urlCheck.setTitle("Title " + i);
+            urlCheck.setUrlId(url.getId());
+            futures.add(writer.submit(urlCheck));
+        }
+        writer.close();
+
+        assertThat(futures).allMatch(future -> future.isDone() && !future.isCompletedExceptionally());
+        assertThat(futures).allMatch(future -> future.join().getId() != null);
+        assertThat(UrlCheckRepository.findByUrlId(url.getId())).hasSize(25);
+
+        var stats = writer.getStats();
+        assertThat(stats.getRows()).isEqualTo(25);
+        assertThat(stats.getMaxBatchSize()).isLessThanOrEqualTo(10);
+        assertThat(stats.getFlushes()).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    void testCheckWriterRetriesFailedBatchRowByRow() throws SQLException {
+        Url url = new Url("https://partial.example.com");
+        UrlRepository.save(url);
+
+        var writer = new CheckWriter(10, 1_000, 100);
+        var futures = new ArrayList<CompletableFuture<UrlCheck>>();
+        for (int i = 0; i < 5; i++) {
+            var urlCheck = new UrlCheck();
+            urlCheck.setStatusCode(200);
+            // Одна строка нарушает внешний ключ и отвергается базой
+            urlCheck.setUrlId(i == 2 ? 999_999L : url.getId());
+            futures.add(writer.submit(urlCheck));
+        }
+        writer.close();
+
+        assertThat(futures.get(2)).isCompletedExceptionally();
+        assertThat(futures.stream().filter(future -> !future.isCompletedExceptionally())).hasSize(4);
+        assertThat(UrlCheckRepository.findByUrlId(url.getId())).hasSize(4);
+        assertThat(writer.getStats().getRows()).isEqualTo(4);
+    }
+
+    @Test
+    void testCheckWriterCompletesEverySubmitRacingWithClose() throws Exception {
+        Url url = new Url("https://closing.example.com");
+        UrlRepository.save(url);
+
+        // Маленький буфер: часть отправителей ждет места в нем как раз во время закрытия
+        var writer = new CheckWriter(5, 5, 4);
+        var futures = new ConcurrentLinkedQueue<CompletableFuture<UrlCheck>>();
+        var started = new CountDownLatch(8);
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                started.countDown();
+                for (int i = 0; i < 200; i++) {
+                    var urlCheck = new UrlCheck();
+                    urlCheck.setStatusCode(200);
+                    urlCheck.setUrlId(url.getId());
+                    futures.add(writer.submit(urlCheck));
+                }
+            }));
+        }
+        started.await();
+        Thread.sleep(20);
+        writer.close();
+        for (var thread : threads) {
+            thread.join(10_000);
+        }
+
+        assertThat(futures).hasSize(1_600);
+        long stored = 0;
+        for (var future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                stored++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).hasMessage("Check writer is closed");
+            }
+        }
+        assertThat(UrlCheckRepository.findByUrlId(url.getId())).hasSize((int) stored);
+    }
+
+    @Test
+    void testCheckClampsLongTitleToColumnLength() throws Exception {
+        var longTitle = "T".repeat(400);
+        var origin = new MockWebServer();
+        origin.enqueue(new MockResponse().setBody("<html><head><title>" + longTitle + "</title></head>"
+                + "<body><h1>" + longTitle + "</h1></body></html>"));
+        origin.start();
+        var writer = new CheckWriter(10, 10, 100);
+
+        try {
+            Url url = new Url(origin.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+            var schedule = new CheckSchedule(Duration.ofDays(1), Duration.ofHours(1), Duration.ofDays(7), 0.2);
+            var checker = new UrlChecker(new PageFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), 1 << 20,
+                    new HostRateLimiter(100, 100), new HostCircuitBreaker(5, Duration.ofMinutes(1))),
+                    writer, schedule, CHECK_REUSE_WINDOW);
+
+            var check = checker.check(url);
+            assertThat(check.getTitle()).hasSize(255);
+            assertThat(UrlCheckRepository.findById(check.getId()).orElseThrow().getH1()).hasSize(255);
+        } finally {
+            writer.close();
+            origin.shutdown();
+        }
+    }
+
+    @Test
+    void testCheckQueueForgetsFinishedChecksAfterTtl() throws Exception {
+        var origin = new MockWebServer();
+        origin.enqueue(new MockResponse().setBody("<html><title>Done</title></html>"));
+        origin.start();
+        var writer = new CheckWriter(10, 10, 100);
+        var schedule = new CheckSchedule(Duration.ofDays(1), Duration.ofHours(1), Duration.ofDays(7), 0.2);
+        var checker = new UrlChecker(new PageFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), 1 << 20,
+                new HostRateLimiter(100, 100), new HostCircuitBreaker(5, Duration.ofMinutes(1))),
+                writer, schedule, Duration.ZERO);
+        var queue = new CheckQueue(checker, 2, 10, Duration.ofMillis(300));
+
+        try {
+            var done = new Url(origin.url("/done").toString());
+            UrlRepository.save(done);
+            // Несуществующий сайт: проверка завершится ошибкой
+            long missing = done.getId() + 1_000;
+            assertThat(queue.submit(done.getId())).isTrue();
+            assertThat(queue.submit(missing)).isTrue();
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while ((queue.getState(done.getId()).map(state -> state.isActive()).orElse(true)
+                    || queue.getState(missing).map(state -> state.isActive()).orElse(true))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(queue.getState(done.getId())).map(state -> state.getStatus()).contains(CheckQueue.Status.DONE);
+            assertThat(queue.getState(missing)).map(state -> state.getStatus())
+                    .contains(CheckQueue.Status.FAILED);
+
+            Thread.sleep(400);
+            assertThat(queue.getState(done.getId())).isEmpty();
+            assertThat(queue.getState(missing)).isEmpty();
+        } finally {
+            queue.shutdown(5_000);
+            writer.close();
+            origin.shutdown();
+        }
+    }
+
+    @Test
+    void testFetcherDropsValidatorsLongerThanTheirColumns() throws Exception {
+        var origin = new MockWebServer();
+        origin.enqueue(new MockResponse().setBody("<html></html>")
+                .setHeader("ETag", "\"" + "e".repeat(100) + "\"")
+                .setHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT; " + "x".repeat(60)));
+        origin.start();
+
+        try {
+            var fetcher = new PageFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), 1 << 20,
+                    new HostRateLimiter(100, 100), new HostCircuitBreaker(5, Duration.ofMinutes(1)));
+            var response = fetcher.fetch(origin.url("/").toString(), null);
+            assertThat(response.getEtag()).hasSize(102);
+            assertThat(response.getLastModified()).isNull();
+        } finally {
+            origin.shutdown();
+        }
+    }
+
+    @Test
+    void testUrlLookupsAreCachedAndInvalidatedOnSave() throws SQLException {
+        String name = "https://cached.example.com";
+        assertThat(UrlRepository.existsByName(name)).isFalse();
+        assertThat(UrlRepository.existsByName(name)).isFalse();
+        assertThat(UrlRepository.getNameCacheStats().getHits()).isEqualTo(1);
+
+        Url url = new Url(name);
+        UrlRepository.save(url);
+        assertThat(UrlRepository.existsByName(name)).isTrue();
+
+        var originalDataSource = BaseRepository.dataSource;
+        try (var countingDataSource = new TestUtils.QueryCountingDataSource(originalDataSource.getJdbcUrl())) {
+            BaseRepository.dataSource = countingDataSource;
+            assertThat(UrlRepository.findById(url.getId())).isPresent();
+            assertThat(UrlRepository.findById(url.getId()).orElseThrow().getName()).isEqualTo(name);
+            assertThat(countingDataSource.getQueryCount()).isEqualTo(1);
+        } finally {
+            BaseRepository.dataSource = originalDataSource;
+        }
+    }
+
+    @Test
+    void testRecheckSendsValidatorsAndReusesUnchangedPage() throws IOException {
+        String fixture = readFixture("index.html");
+        var origin = new MockWebServer();
+        origin.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+                    return new MockResponse().setResponseCode(304);
+                }
+                return new MockResponse()
+                        .setBody(fixture)
+                        .setHeader("ETag", "\"v1\"")
+                        .setResponseCode(200);
+            }
+        });
+        origin.start();
+
+        try {
+            JavalinTest.test(app, (server, client) -> {
+                Url url = new Url(origin.url("/").toString().replaceAll("/$", ""));
+                UrlRepository.save(url);
+
+                client.post("/urls/" + url.getId() + "/checks");
+                awaitCheckFinished(url.getId());
+                // Окно повторного использования в тестах нулевое (CHECK_REUSE_SECONDS=0), вторая проверка идет к сайту
+                client.post("/urls/" + url.getId() + "/checks");
+                awaitCheckFinished(url.getId());
+
+                List<UrlCheck> checks = UrlCheckRepository.findByUrlId(url.getId());
+                assertThat(checks).hasSize(2);
+                var first = checks.get(1);
+                var second = checks.get(0);
+                assertThat(first.getStatusCode()).isEqualTo(200);
+                assertThat(first.getEtag()).isEqualTo("\"v1\"");
+                assertThat(first.getBodyHash()).hasSize(64);
+                assertThat(second.getStatusCode()).isEqualTo(304);
+                assertThat(second.getTitle()).isEqualTo("Test page");
+                assertThat(second.getDescription()).isEqualTo("statements of great people");
+                assertThat(second.getBodyHash()).isEqualTo(first.getBodyHash());
+            });
+        } finally {
+            origin.shutdown();
+        }
+    }
+
+    @Test
+    void testMetricsEndpointExposesQueryAndRouteTimings() {
+        JavalinTest.test(app, (server, client) -> {
+            client.get("/urls");
+            var response = client.get("/metrics");
+            assertThat(response.code()).isEqualTo(200);
+            assertThat(response.header("Content-Type")).startsWith("text/plain");
+            var body = response.body().string();
+            assertThat(body)
+                    .contains("db_query_duration_seconds_count{method=\"UrlRepository.findPageWithLatestChecks\"}");
+            assertThat(body).contains("http_server_request_duration_seconds_count{method=\"GET\",route=\"/urls\"");
+            assertThat(body).contains("hikari_connections_active");
+            assertThat(body).contains("# TYPE page_cache_hits_total counter")
+                    .contains("# TYPE url_cache_misses_total counter")
+                    .contains("# TYPE hikari_connections gauge");
+        });
+    }
+
+    @Test
+    void testHistogramCountMatchesInfBucketDuringObservations() throws InterruptedException {
+        var histogram = Metrics.histogram("test_consistency_seconds", "Histogram scraped while observed",
+                new double[] {0.1, 1});
+        var stop = new AtomicBoolean();
+        var observer = Thread.ofVirtual().start(() -> {
+            while (!stop.get()) {
+                histogram.observe(0.05);
+                histogram.observe(0.5);
+                histogram.observe(5);
+            }
+        });
+
+        try {
+            for (int i = 0; i < 200; i++) {
+                var out = new StringBuilder();
+                histogram.write(out, "test_consistency_seconds", "");
+                var lines = out.toString().lines().toList();
+                var inf = lines.stream().filter(line -> line.contains("le=\"+Inf\"")).findFirst().orElseThrow();
+                var count = lines.stream().filter(line -> line.startsWith("test_consistency_seconds_count"))
+                        .findFirst().orElseThrow();
+                assertThat(inf.substring(inf.lastIndexOf(' '))).isEqualTo(count.substring(count.lastIndexOf(' ')));
+            }
+        } finally {
+            stop.set(true);
+            observer.join();
+        }
+        assertThat(histogram.getCount() % 3).isZero();
+    }
+
+    @Test
+    void testUnitOfWorkSharesConnectionAndRollsBackTransaction() throws SQLException {
+        Url url = new Url("https://unit.example.com");
+        UrlRepository.save(url);
+
+        var originalDataSource = BaseRepository.dataSource;
+        try (var countingDataSource = new TestUtils.QueryCountingDataSource(originalDataSource.getJdbcUrl())) {
+            BaseRepository.dataSource = countingDataSource;
+            try (var unitOfWork = UnitOfWork.begin("test")) {
+                assertThat(UrlCheckRepository.findByUrlId(url.getId())).isEmpty();
+                assertThat(UrlCheckRepository.findLatestCheck(url.getId())).isEmpty();
+                assertThatThrownBy(() -> UnitOfWork.inTransaction(() -> {
+                    var urlCheck = new UrlCheck();
+                    urlCheck.setStatusCode(200);
+                    urlCheck.setUrlId(url.getId());
+                    urlCheck.setCreatedAt(LocalDateTime.now());
+                    UrlCheckRepository.save(urlCheck);
+                    throw new SQLException("rollback");
+                })).hasMessage("rollback");
+            }
+            assertThat(countingDataSource.getConnectionCount()).isEqualTo(1);
+        } finally {
+            BaseRepository.dataSource = originalDataSource;
+        }
+        assertThat(UrlCheckRepository.findByUrlId(url.getId())).isEmpty();
+    }
+
+    @Test
+    void testSchedulerDispatchesDueChecksAndKeepsScheduleInDatabase() throws Exception {
+        Url url = new Url(mockWebServer.url("/").toString().replaceAll("/$", ""));
+        UrlRepository.save(url);
+        UrlRepository.updateSchedule(url.getId(), LocalDateTime.now().minusMinutes(1), Duration.ofHours(1));
+
+        var schedule = new CheckSchedule(Duration.ofDays(1), Duration.ofHours(1), Duration.ofDays(7), 0.2);
+        var scheduler = new CheckScheduler(UrlCheckController.checkQueue, schedule, Duration.ofMillis(100), 100);
+        scheduler.start();
+        try {
+            awaitCheckFinished(url.getId());
+        } finally {
+            scheduler.stop();
+        }
+
+        assertThat(UrlCheckRepository.findByUrlId(url.getId())).hasSize(1);
+        var scheduled = UrlRepository.findById(url.getId()).orElseThrow();
+        assertThat(scheduled.getCheckIntervalSeconds()).isEqualTo(3600L);
+        assertThat(scheduled.getNextCheckAt()).isAfter(LocalDateTime.now().plusMinutes(30));
+    }
+
+    @Test
+    void testScheduleLeaseIsTakenOnlyOnce() throws Exception {
+        Url url = new Url("https://lease.example.com");
+        UrlRepository.save(url);
+        var hour = Duration.ofHours(1);
+        var nextHour = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.SECONDS);
+
+        assertThat(UrlRepository.leaseSchedule(url.getId(), null, nextHour, hour)).isTrue();
+        assertThat(UrlRepository.leaseSchedule(url.getId(), null, nextHour, hour)).isFalse();
+
+        var loaded = UrlRepository.findById(url.getId()).orElseThrow().getNextCheckAt();
+        var first = UrlRepository.leaseSchedule(url.getId(), loaded, nextHour.plusHours(1), hour);
+        var second = UrlRepository.leaseSchedule(url.getId(), loaded, nextHour.plusHours(2), hour);
+
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        assertThat(UrlRepository.findById(url.getId()).orElseThrow().getNextCheckAt())
+                .isEqualTo(nextHour.plusHours(1));
+    }
+
+    @Test
+    void testCheckScheduleAdaptsIntervalToChanges() {
+        var schedule = new CheckSchedule(Duration.ofDays(1), Duration.ofHours(1), Duration.ofDays(7), 0.2);
+        var previous = new UrlCheck();
+        previous.setStatusCode(200);
+        previous.setTitle("Old title");
+        var unchanged = new UrlCheck();
+        unchanged.setStatusCode(304);
+        unchanged.setTitle("Old title");
+        var changed = new UrlCheck();
+        changed.setStatusCode(200);
+        changed.setTitle("New title");
+
+        assertThat(schedule.nextInterval(Duration.ofHours(4), previous, unchanged)).isEqualTo(Duration.ofHours(6));
+        assertThat(schedule.nextInterval(Duration.ofHours(4), previous, changed)).isEqualTo(Duration.ofHours(2));
+        assertThat(schedule.nextInterval(Duration.ofHours(1), previous, changed)).isEqualTo(Duration.ofHours(1));
+        assertThat(schedule.nextInterval(Duration.ofDays(6), previous, unchanged)).isEqualTo(Duration.ofDays(7));
+        assertThat(schedule.nextCheckAt(LocalDateTime.of(2024, 1, 1, 0, 0), Duration.ofHours(10)))
+                .isBetween(LocalDateTime.of(2024, 1, 1, 8, 0), LocalDateTime.of(2024, 1, 1, 12, 0));
+    }
+
+    @Test
+    void testUrlsPageIsCachedWithEtagAndInvalidatedOnSave() throws SQLException {
+        UrlRepository.save(new Url("https://cached.example.com"));
+
+        JavalinTest.test(app, (server, client) -> {
+            // Без явного заголовка клиент сам попросил бы gzip
+            var first = client.get("/urls", request -> request.header("Accept-Encoding", "identity"));
+            assertThat(first.code()).isEqualTo(200);
+            var etag = first.header("ETag");
+            assertThat(etag).startsWith("\"");
+
+            var revalidated = client.get("/urls", request -> request.header("Accept-Encoding", "identity")
+                    .header("If-None-Match", etag));
+            assertThat(revalidated.code()).isEqualTo(304);
+
+            var compressed = client.get("/urls", request -> request.header("Accept-Encoding", "gzip"));
+            assertThat(compressed.header("Content-Encoding")).isEqualTo("gzip");
+            var gzippedEtag = compressed.header("ETag");
+            assertThat(gzippedEtag).isEqualTo(etag.substring(0, etag.length() - 1) + "-gz\"");
+
+            // Тег несжатой версии не подтверждает сжатую, и наоборот
+            var otherRepresentation = client.get("/urls", request -> request.header("Accept-Encoding", "gzip")
+                    .header("If-None-Match", etag));
+            assertThat(otherRepresentation.code()).isEqualTo(200);
+            var gzippedRevalidated = client.get("/urls", request -> request.header("Accept-Encoding", "gzip")
+                    .header("If-None-Match", gzippedEtag));
+            assertThat(gzippedRevalidated.code()).isEqualTo(304);
+
+            UrlRepository.save(new Url("https://another.example.com"));
+            var changed = client.get("/urls", request -> request.header("Accept-Encoding", "identity")
+                    .header("If-None-Match", etag));
+            assertThat(changed.code()).isEqualTo(200);
+            assertThat(changed.header("ETag")).isNotEqualTo(etag);
+            assertThat(changed.body().string()).contains("https://another.example.com");
+        });
+    }
+
+    @Test
+    void testMigrationsUpgradeBaselineSchemaAndKeepData() throws IOException, SQLException {
+        var config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:baseline_upgrade");
+        try (var dataSource = new HikariDataSource(config)) {
+            try (var connection = dataSource.getConnection();
+                 var statement = connection.createStatement()) {
+                // База, созданная старым schema.sql до появления миграций
+                statement.execute("CREATE TABLE urls (id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL, "
+                        + "name VARCHAR(255), created_at TIMESTAMP NOT NULL, CONSTRAINT pk_url PRIMARY KEY (id))");
+                statement.execute("CREATE TABLE url_checks (id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL, "
+                        + "status_code INTEGER NOT NULL, title VARCHAR(255), h1 VARCHAR(255), description TEXT, "
+                        + "url_id BIGINT NOT NULL, created_at TIMESTAMP NOT NULL, "
+                        + "CONSTRAINT pk_url_checks PRIMARY KEY (id))");
+                statement.execute("CREATE INDEX ix_url_check_url_id ON url_checks (url_id)");
+                statement.execute("ALTER TABLE url_checks ADD CONSTRAINT fk_url_checks_url_id FOREIGN KEY (url_id) "
+                        + "REFERENCES urls (id) ON DELETE RESTRICT ON UPDATE RESTRICT");
+                statement.execute("INSERT INTO urls (name, created_at) "
+                        + "VALUES ('https://kept.example.com', CURRENT_TIMESTAMP)");
+                statement.execute("INSERT INTO url_checks (status_code, title, url_id, created_at) "
+                        + "VALUES (200, 'Kept', 1, CURRENT_TIMESTAMP)");
+            }
+
+            Migrations.migrate(dataSource);
+            // Повторный запуск на актуальной схеме ничего не делает
+            Migrations.migrate(dataSource);
+
+            try (var connection = dataSource.getConnection();
+                 var statement = connection.createStatement()) {
+                try (var urls = statement.executeQuery(
+                        "SELECT name, next_check_at, check_interval_seconds FROM urls")) {
+                    assertThat(urls.next()).isTrue();
+                    assertThat(urls.getString("name")).isEqualTo("https://kept.example.com");
+                    assertThat(urls.getTimestamp("next_check_at")).isNull();
+                }
+                try (var checks = statement.executeQuery(
+                        "SELECT title, truncated, etag, last_modified, body_hash, ttfb_ms, response_bytes "
+                        + "FROM url_checks")) {
+                    assertThat(checks.next()).isTrue();
+                    assertThat(checks.getString("title")).isEqualTo("Kept");
+                    assertThat(checks.getBoolean("truncated")).isFalse();
+                    assertThat(checks.getObject("ttfb_ms")).isNull();
+                }
+                try (var versions = statement.executeQuery(
+                        "SELECT COUNT(*), MIN(version), MAX(version) FROM schema_version")) {
+                    assertThat(versions.next()).isTrue();
+                    assertThat(versions.getInt(2)).isEqualTo(1);
+                    assertThat(versions.getInt(3)).isEqualTo(versions.getInt(1)).isGreaterThan(1);
+                }
+
+                statement.executeUpdate("UPDATE schema_version SET checksum = 'edited' WHERE version = 1");
+            }
+
+            assertThatThrownBy(() -> Migrations.migrate(dataSource))
+                    .isInstanceOf(SQLException.class)
+                    .hasMessageContaining("db/migration/V1.sql");
+        }
+    }
+
+    @Test
+    void testUniqueNameMigrationMergesDuplicatesDailyHistory() throws IOException, SQLException {
+        var config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:duplicate_merge");
+        try (var dataSource = new HikariDataSource(config);
+             var connection = dataSource.getConnection();
+             var statement = connection.createStatement()) {
+            var classLoader = AppTest.class.getClassLoader();
+            for (int version = 1; version <= 3; version++) {
+                try (var script = classLoader.getResourceAsStream("db/migration/V" + version + ".sql")) {
+                    statement.execute(new String(script.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+            for (int i = 0; i < 3; i++) {
+                statement.execute("INSERT INTO urls (name, created_at) VALUES ('https://dup.example.com', "
+                        + "CURRENT_TIMESTAMP)");
+            }
+            // url_id, день, проверки, 2xx, 3xx, 4xx, 5xx, первый и последний title, время первой и последней
+            Object[][] daily = {
+                {1, "2024-01-01", 2, 2, 0, 0, 0, "A1", "A2", "2024-01-01 10:00:00", "2024-01-01 12:00:00"},
+                {2, "2024-01-01", 3, 0, 0, 0, 3, "B1", "B2", "2024-01-01 09:00:00", "2024-01-01 11:00:00"},
+                {3, "2024-01-01", 1, 0, 0, 1, 0, "C1", "C2", "2024-01-01 10:30:00", "2024-01-01 13:00:00"},
+                {2, "2024-01-02", 1, 1, 0, 0, 0, "D", "D", "2024-01-02 08:00:00", "2024-01-02 08:00:00"},
+                {3, "2024-01-02", 2, 0, 2, 0, 0, "E1", "E2", "2024-01-02 07:00:00", "2024-01-02 09:00:00"},
+            };
+            try (var insert = connection.prepareStatement("INSERT INTO url_check_daily (url_id, check_day, "
+                    + "checks_count, status_2xx, status_3xx, status_4xx, status_5xx, first_title, last_title, "
+                    + "first_checked_at, last_checked_at) VALUES (?, CAST(? AS DATE), ?, ?, ?, ?, ?, ?, ?, "
+                    + "CAST(? AS TIMESTAMP), CAST(? AS TIMESTAMP))")) {
+                for (var row : daily) {
+                    for (int i = 0; i < row.length; i++) {
+                        insert.setObject(i + 1, row[i]);
+                    }
+                    insert.executeUpdate();
+                }
+            }
+
+            try (var script = classLoader.getResourceAsStream("db/migration/V4.sql")) {
+                statement.execute(new String(script.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            try (var urls = statement.executeQuery("SELECT id FROM urls")) {
+                assertThat(urls.next()).isTrue();
+                assertThat(urls.getLong("id")).isEqualTo(1L);
+                assertThat(urls.next()).isFalse();
+            }
+            try (var rows = statement.executeQuery("SELECT * FROM url_check_daily ORDER BY check_day")) {
+                assertThat(rows.next()).isTrue();
+                assertThat(rows.getLong("url_id")).isEqualTo(1L);
+                assertThat(rows.getInt("checks_count")).isEqualTo(6);
+                assertThat(rows.getInt("status_2xx")).isEqualTo(2);
+                assertThat(rows.getInt("status_4xx")).isEqualTo(1);
+                assertThat(rows.getInt("status_5xx")).isEqualTo(3);
+                assertThat(rows.getString("first_title")).isEqualTo("B1");
+                assertThat(rows.getString("last_title")).isEqualTo("C2");
+                assertThat(rows.getTimestamp("first_checked_at").toLocalDateTime())
+                        .isEqualTo(LocalDateTime.of(2024, 1, 1, 9, 0));
+                assertThat(rows.getTimestamp("last_checked_at").toLocalDateTime())
+                        .isEqualTo(LocalDateTime.of(2024, 1, 1, 13, 0));
+
+                assertThat(rows.next()).isTrue();
+                assertThat(rows.getLong("url_id")).isEqualTo(1L);
+                assertThat(rows.getInt("checks_count")).isEqualTo(3);
+                assertThat(rows.getInt("status_2xx")).isEqualTo(1);
+                assertThat(rows.getInt("status_3xx")).isEqualTo(2);
+                assertThat(rows.getString("first_title")).isEqualTo("E1");
+                assertThat(rows.getString("last_title")).isEqualTo("E2");
+                assertThat(rows.getTimestamp("first_checked_at").toLocalDateTime())
+                        .isEqualTo(LocalDateTime.of(2024, 1, 2, 7, 0));
+                assertThat(rows.next()).isFalse();
+            }
+        }
+    }
+
+    @Test
+    void testRetentionRollsUpOldChecksIntoDailyHistory() throws Exception {
+        Url url = new Url("https://history.example.com");
+        UrlRepository.save(url);
+
+        var day = LocalDateTime.now().minusDays(40).withHour(9);
+        for (int i = 0; i < 3; i++) {
+            var urlCheck = new UrlCheck();
+            urlCheck.setStatusCode(i < 2 ? 200 : 500);
+            urlCheck.setTitle("Title " + i);
+            urlCheck.setUrlId(url.getId());
+            urlCheck.setCreatedAt(day.plusHours(i));
+            UrlCheckRepository.save(urlCheck);
+        }
+        var latest = new UrlCheck();
+        latest.setStatusCode(200);
+        latest.setUrlId(url.getId());
+        latest.setCreatedAt(LocalDateTime.now());
+        UrlCheckRepository.save(latest);
+
+        var retention = new CheckRetention(Duration.ofDays(30), Duration.ofHours(1), 2);
+        assertThat(retention.runOnce()).isEqualTo(3);
+        assertThat(retention.runOnce()).isZero();
+
+        assertThat(UrlCheckRepository.findByUrlId(url.getId()))
+                .extracting(UrlCheck::getId)
+                .containsExactly(latest.getId());
+        var history = UrlCheckDailyRepository.findByUrlId(url.getId(), 10);
+        assertThat(history).hasSize(1);
+        assertThat(history.getFirst().getChecksCount()).isEqualTo(3);
+        assertThat(history.getFirst().getStatus2xx()).isEqualTo(2);
+        assertThat(history.getFirst().getStatus5xx()).isEqualTo(1);
+        assertThat(history.getFirst().getFirstTitle()).isEqualTo("Title 0");
+        assertThat(history.getFirst().getLastTitle()).isEqualTo("Title 2");
+
+        JavalinTest.test(app, (server, client) -> {
+            var body = client.get("/urls/" + url.getId()).body().string();
+            assertThat(body).contains("История по дням").contains("Title 2");
         });
     }
+
+    @Test
+    void testSearchFindsUrlsByNameAndLatestCheck() throws SQLException {
+        Url titled = new Url("https://first.example.com");
+        UrlRepository.save(titled);
+        Url named = new Url("https://zephyr.example.org");
+        UrlRepository.save(named);
+        Url other = new Url("https://other.example.net");
+        UrlRepository.save(other);
+
+        var urlCheck = new UrlCheck();
+        urlCheck.setStatusCode(200);
+        urlCheck.setTitle("Zephyr weather station");
+        urlCheck.setUrlId(titled.getId());
+        urlCheck.setCreatedAt(LocalDateTime.now());
+        UrlCheckRepository.save(urlCheck);
+
+        JavalinTest.test(app, (server, client) -> {
+            var body = client.get("/urls?q=zeph").body().string();
+            assertThat(body).contains("https://first.example.com")
+                    .contains("https://zephyr.example.org")
+                    .doesNotContain("https://other.example.net")
+                    .contains("Найдено: 2");
+
+            var narrowed = client.get("/urls?q=zephyr+weather").body().string();
+            assertThat(narrowed).contains("https://first.example.com")
+                    .doesNotContain("https://zephyr.example.org");
+        });
+    }
+
+    @Test
+    void testSearchIndexKeepsNewerCheckWhenOlderArrivesLate() throws SQLException {
+        var index = new UrlSearchIndex();
+        Url url = new Url("https://ordered.example.com");
+        UrlRepository.save(url);
+        index.put(url, null);
+
+        var newer = new UrlCheck();
+        newer.setStatusCode(200);
+        newer.setTitle("Fresh harbour news");
+        newer.setUrlId(url.getId());
+        newer.setCreatedAt(LocalDateTime.now());
+        UrlCheckRepository.save(newer);
+        var older = new UrlCheck();
+        older.setStatusCode(200);
+        older.setTitle("Stale harbour news");
+        older.setUrlId(url.getId());
+        older.setCreatedAt(newer.getCreatedAt().minusMinutes(1));
+        UrlCheckRepository.save(older);
+
+        index.updateCheck(newer);
+        index.updateCheck(older);
+
+        assertThat(index.search("fresh", 10)).containsExactly(url.getId());
+        assertThat(index.search("stale", 10)).isEmpty();
+    }
+
+    @Test
+    void testSearchIndexRebuildPicksUpRowsSavedElsewhere() throws SQLException {
+        var index = new UrlSearchIndex();
+        index.rebuild();
+        Url local = new Url("https://local.example.com");
+        UrlRepository.save(local);
+        index.put(local, null);
+        var check = new UrlCheck();
+        check.setStatusCode(200);
+        check.setTitle("Harbour timetable");
+        check.setUrlId(local.getId());
+        index.updateCheck(check);
+
+        // Строка, добавленная другим экземпляром приложения, мимо этого индекса
+        TestUtils.addUrl(BaseRepository.dataSource, "https://remote.example.com");
+        assertThat(index.search("remote", 10)).isEmpty();
+        assertThat(index.search("harbour", 10)).containsExactly(local.getId());
+
+        index.rebuild();
+        var remote = UrlRepository.findByName("https://remote.example.com").orElseThrow();
+        assertThat(index.search("remote", 10)).containsExactly(remote.getId());
+        assertThat(index.search("local", 10)).containsExactly(local.getId());
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testImportAddsNewUrlsAndCountsDuplicatesAndInvalidLines() throws SQLException {
+        UrlRepository.save(new Url("https://existing.example.com"));
+        var upload = String.join("\n",
+                "url,comment",
+                "https://existing.example.com/page,already stored",
+                "https://imported.example.com",
+                "\"https://imported.example.com:443/other\",same site",
+                "",
+                "not a url",
+                "http://second.example.com:8080/");
+
+        JavalinTest.test(app, (server, client) -> {
+            var body = client.post("/urls/import", upload).body().string();
+            assertThat(body).contains("добавлено 2").contains("уже были в списке 2").contains("некорректных строк 1");
+        });
+
+        assertThat(UrlRepository.findByName("https://imported.example.com")).isPresent();
+        assertThat(UrlRepository.findByName("http://second.example.com:8080")).isPresent();
+        assertThat(UrlRepository.findAll()).hasSize(3);
+        assertThatThrownBy(() -> UrlRepository.save(new Url("https://imported.example.com")))
+                .isInstanceOf(SQLException.class)
+                .matches(e -> BaseRepository.isUniqueViolation((SQLException) e));
+    }
+
+    @Test
+    void testSaveAllIgnoringDuplicatesReturnsOnlyInsertedUrls() throws SQLException {
+        UrlRepository.save(new Url("https://stored.example.com"));
+
+        var saved = UrlRepository.saveAllIgnoringDuplicates(List.of(new Url("https://stored.example.com"),
+                new Url("https://fresh.example.com"), new Url("https://fresh.example.com")));
+
+        assertThat(saved).extracting(Url::getName).containsExactly("https://fresh.example.com");
+        assertThat(saved.get(0).getId())
+                .isEqualTo(UrlRepository.findByName("https://fresh.example.com").orElseThrow().getId());
+        assertThat(UrlRepository.findAll()).hasSize(2);
+    }
+
+    @Test
+    void testApiPagesUrlsAndChecksWithCursors() throws SQLException {
+        Url older = new Url("https://older.example.com");
+        older.setCreatedAt(LocalDateTime.now().minusDays(1));
+        UrlRepository.save(older);
+        Url newer = new Url("https://newer.example.com");
+        UrlRepository.save(newer);
+
+        var urlCheck = new UrlCheck();
+        urlCheck.setStatusCode(200);
+        urlCheck.setTitle("Quoted \"title\"");
+        urlCheck.setUrlId(older.getId());
+        UrlCheckRepository.save(urlCheck);
+
+        JavalinTest.test(app, (server, client) -> {
+            var first = client.get("/api/urls?limit=1");
+            assertThat(first.code()).isEqualTo(200);
+            assertThat(first.header("Content-Type")).startsWith("application/json");
+            var firstBody = first.body().string();
+            assertThat(firstBody).contains("\"name\":\"https://newer.example.com\"")
+                    .doesNotContain("https://older.example.com");
+
+            var next = Pattern.compile("\"next\":\"([^\"]+)\"").matcher(firstBody);
+            assertThat(next.find()).isTrue();
+            var second = client.get("/api/urls?limit=1&after=" + next.group(1)).body().string();
+            assertThat(second).contains("\"name\":\"https://older.example.com\"")
+                    .contains("\"title\":\"Quoted \\\"title\\\"\"")
+                    .contains("\"next\":null");
+
+            var checks = client.get("/api/urls/" + older.getId() + "/checks").body().string();
+            assertThat(checks).contains("\"statusCode\":200").contains("\"next\":null");
+
+            assertThat(client.get("/api/urls/999").code()).isEqualTo(404);
+
+            var queued = client.post("/api/urls/" + newer.getId() + "/checks");
+            assertThat(queued.code()).isEqualTo(202);
+            assertThat(queued.body().string()).contains("\"urlId\":" + newer.getId());
+        });
+    }
+
+    @Test
+    void testExportStreamsFilteredChecksAsCsvNdjsonAndGzip() throws SQLException {
+        Url exported = new Url("https://exported.example.com");
+        UrlRepository.save(exported);
+        Url skipped = new Url("https://skipped.example.com");
+        UrlRepository.save(skipped);
+
+        var old = new UrlCheck();
+        old.setStatusCode(500);
+        old.setUrlId(exported.getId());
+        old.setCreatedAt(LocalDateTime.now().minusDays(10));
+        UrlCheckRepository.save(old);
+        var recent = new UrlCheck();
+        recent.setStatusCode(200);
+        recent.setTitle("Shop, \"best\" prices");
+        recent.setTtfbMillis(120);
+        recent.setDownloadMillis(30);
+        recent.setParseMillis(4);
+        recent.setResponseBytes(2048);
+        recent.setUrlId(exported.getId());
+        UrlCheckRepository.save(recent);
+        var other = new UrlCheck();
+        other.setStatusCode(404);
+        other.setUrlId(skipped.getId());
+        UrlCheckRepository.save(other);
+
+        JavalinTest.test(app, (server, client) -> {
+            var csv = client.get("/api/checks/export?urlId=" + exported.getId()).body().string();
+            assertThat(csv.split("\n")).hasSize(3);
+            assertThat(csv).startsWith("id,url_id,status_code,title,h1,description,truncated,"
+                            + "ttfb_ms,download_ms,parse_ms,response_bytes,created_at\n")
+                    .contains(",200,\"Shop, \"\"best\"\" prices\",")
+                    .contains(",false,120,30,4,2048,")
+                    .contains(",500,,,,false,,,,,")
+                    .doesNotContain(",404,");
+
+            var from = LocalDateTime.now().minusDays(1).toLocalDate();
+            var ndjson = client.get("/api/checks/export?format=ndjson&from=" + from).body().string();
+            assertThat(ndjson.split("\n")).hasSize(2);
+            assertThat(ndjson).contains("\"statusCode\":200").contains("\"statusCode\":404")
+                    .contains("\"ttfbMs\":120,\"downloadMs\":30,\"parseMs\":4,\"responseBytes\":2048")
+                    .contains("\"ttfbMs\":null")
+                    .doesNotContain("\"statusCode\":500");
+
+            var gzipped = client.get("/api/checks/export?gzip=true");
+            assertThat(gzipped.header("Content-Disposition")).contains("url_checks.csv.gz");
+            try (var in = new GZIPInputStream(gzipped.body().byteStream())) {
+                var unpacked = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertThat(unpacked.split("\n")).hasSize(4);
+            }
+
+            assertThat(client.get("/api/checks/export?format=xml").code()).isEqualTo(400);
+        });
+    }
+
+    @Test
+    void testConcurrentChecksOfOneUrlShareOneFetchAndOneRow() throws Exception {
+        String fixture = readFixture("index.html");
+        var origin = new MockWebServer();
+        origin.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(fixture).setBodyDelay(300, TimeUnit.MILLISECONDS);
+            }
+        });
+        origin.start();
+        var writer = new CheckWriter(10, 10, 100);
+
+        try {
+            Url url = new Url(origin.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+            var schedule = new CheckSchedule(Duration.ofDays(1), Duration.ofHours(1), Duration.ofDays(7), 0.2);
+            var checker = new UrlChecker(new PageFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), 1 << 20,
+                    new HostRateLimiter(100, 100), new HostCircuitBreaker(5, Duration.ofMinutes(1))),
+                    writer, schedule, CHECK_REUSE_WINDOW);
+
+            var first = checker.checkAsync(url);
+            var second = checker.checkAsync(url);
+            var blocking = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return checker.check(url);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            var check = first.get(5, TimeUnit.SECONDS);
+            assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(check);
+            assertThat(blocking.get(5, TimeUnit.SECONDS)).isSameAs(check);
+            assertThat(checker.check(url)).isSameAs(check);
+
+            assertThat(origin.getRequestCount()).isEqualTo(1);
+            assertThat(UrlCheckRepository.findByUrlId(url.getId())).hasSize(1);
+        } finally {
+            writer.close();
+            origin.shutdown();
+        }
+    }
+
+    @Test
+    void testFetcherTimesOutAndOpensCircuitForFailingHost() throws Exception {
+        var origin = new MockWebServer();
+        origin.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().startsWith("/slow")) {
+                    return new MockResponse().setBody("late").setBodyDelay(2, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        origin.start();
+
+        try {
+            var breaker = new HostCircuitBreaker(2, Duration.ofMinutes(1));
+            var fetcher = new PageFetcher(Duration.ofSeconds(1), Duration.ofMillis(300), 1 << 20,
+                    new HostRateLimiter(100, 100), breaker);
+            var base = origin.url("/").toString().replaceAll("/$", "");
+            var host = PageFetcher.hostOf(base);
+
+            assertThatThrownBy(() -> fetcher.fetch(base + "/slow", null)).isInstanceOf(HttpTimeoutException.class);
+            assertThat(breaker.stateOf(host).getFailures()).isEqualTo(1);
+
+            assertThat(fetcher.fetch(base, null).getStatusCode()).isEqualTo(500);
+            assertThat(breaker.stateOf(host).getState()).isEqualTo(HostCircuitBreaker.State.OPEN);
+
+            assertThatThrownBy(() -> fetcher.fetch(base, null))
+                    .isInstanceOf(HostCircuitBreaker.OpenCircuitException.class);
+            assertThat(origin.getRequestCount()).isEqualTo(2);
+        } finally {
+            origin.shutdown();
+        }
+    }
+
+    @Test
+    void testCheckRecordsTimingBreakdown() throws Exception {
+        String fixture = readFixture("index.html");
+        var origin = new MockWebServer();
+        origin.enqueue(new MockResponse().setBody(fixture)
+                .setHeadersDelay(200, TimeUnit.MILLISECONDS)
+                .setBodyDelay(200, TimeUnit.MILLISECONDS));
+        origin.start();
+        var writer = new CheckWriter(10, 10, 100);
+
+        try {
+            Url url = new Url(origin.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+            var schedule = new CheckSchedule(Duration.ofDays(1), Duration.ofHours(1), Duration.ofDays(7), 0.2);
+            var checker = new UrlChecker(new PageFetcher(Duration.ofSeconds(5), Duration.ofSeconds(5), 1 << 20,
+                    new HostRateLimiter(100, 100), new HostCircuitBreaker(5, Duration.ofMinutes(1))),
+                    writer, schedule, CHECK_REUSE_WINDOW);
+
+            checker.check(url);
+
+            var stored = UrlCheckRepository.findLatestCheck(url.getId()).orElseThrow();
+            assertThat(stored.getTtfbMillis()).isGreaterThanOrEqualTo(200);
+            assertThat(stored.getDownloadMillis()).isGreaterThanOrEqualTo(150);
+            assertThat(stored.getParseMillis()).isNotNull();
+            assertThat(stored.getResponseBytes()).isEqualTo(fixture.getBytes(StandardCharsets.UTF_8).length);
+            assertThat(stored.getResponseMillis()).isEqualTo(stored.getTtfbMillis() + stored.getDownloadMillis());
+
+            var latest = UrlRepository.findPageWithLatestChecks(PageRequest.first(10)).getItems().stream()
+                    .filter(u -> u.getId().equals(url.getId()))
+                    .findFirst()
+                    .orElseThrow();
+            assertThat(latest.getLatestCheck().getTtfbMillis()).isEqualTo(stored.getTtfbMillis());
+        } finally {
+            writer.close();
+            origin.shutdown();
+        }
+    }
+
+    @Test
+    void testPinningMonitorReportsBlockingInsideSynchronized() throws Exception {
+        var monitor = new PinningMonitor(Duration.ofMillis(10));
+        monitor.start();
+        try {
+            var lock = new Object();
+            Thread.ofVirtual().start(() -> {
+                synchronized (lock) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }).join();
+
+            // События JFR доставляются пачками, примерно раз в секунду
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (monitor.getEvents() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(monitor.getEvents()).isPositive();
+        } finally {
+            monitor.close();
+        }
+    }
 }
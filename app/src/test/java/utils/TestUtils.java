@@ -1,13 +1,35 @@
 package utils;
 
+import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class TestUtils {
 
+    /**
+     * Empties the tables and restarts their ids. Migrations keep data between
+     * application starts, so tests reset it themselves.
+     */
+    public static void cleanDatabase(HikariDataSource dataSource) throws SQLException {
+        try (var conn = dataSource.getConnection();
+             var stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM url_check_daily");
+            stmt.execute("DELETE FROM url_checks");
+            stmt.execute("DELETE FROM urls");
+            stmt.execute("ALTER TABLE url_checks ALTER COLUMN id RESTART WITH 1");
+            stmt.execute("ALTER TABLE urls ALTER COLUMN id RESTART WITH 1");
+        }
+    }
+
     public static void addUrl(HikariDataSource dataSource, String url) throws SQLException {
         var sql = "INSERT INTO urls (name, created_at) VALUES (?, '2023-08-27 14:20:19.13')";
 
@@ -68,4 +90,52 @@ public class TestUtils {
             return null;
         }
     }
+
+    /**
+     * Data source that counts checked out connections and every statement prepared
+     * through them, so tests can assert how many queries a request issues.
+     */
+    public static final class QueryCountingDataSource extends HikariDataSource {
+        private static final Set<String> STATEMENT_METHODS = Set.of("createStatement", "prepareStatement", "prepareCall");
+
+        private final AtomicInteger queryCount = new AtomicInteger();
+        private final AtomicInteger connectionCount = new AtomicInteger();
+
+        public QueryCountingDataSource(String jdbcUrl) {
+            super(createConfig(jdbcUrl));
+        }
+
+        private static HikariConfig createConfig(String jdbcUrl) {
+            var config = new HikariConfig();
+            config.setJdbcUrl(jdbcUrl);
+            return config;
+        }
+
+        public int getQueryCount() {
+            return queryCount.get();
+        }
+
+        public int getConnectionCount() {
+            return connectionCount.get();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            var connection = super.getConnection();
+            connectionCount.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        if (STATEMENT_METHODS.contains(method.getName())) {
+                            queryCount.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
 }